@@ -0,0 +1,19 @@
+// Filename: AnsiRenderer.java
+//
+// Contains the class AnsiRenderer that draws the boards exactly like Utilities.printSolution,
+// ANSI reset code after every square included. This is the default output mode.
+//
+// This needs to be compiled with PlainRenderer.java, Renderer.java, Node.java and Utilities.java.
+//
+
+class AnsiRenderer extends PlainRenderer {
+
+  // Method to append the ANSI reset code after each square
+  // Input: none
+  // Output: void
+  protected void endSquare() {
+    buffer.append("\u001B[0m");
+  }
+}
+
+// End
@@ -0,0 +1,261 @@
+// Filename: BinaryPuzzleFile.java
+//
+// Contains class BinaryPuzzleFile that stores puzzles as fixed size binary records, and the
+// converter between input.txt and that format
+//
+// The file starts with a 16 byte header (magic, board size, record count, offset of the index),
+// followed by one record per board and then the index:
+//     record   byte moves, byte flags (FLAG_WHITE_TO_MOVE and FLAG_INVALID), byte number of chesspieces,
+//              then 2 bytes per chesspiece in the order of the text line: the 4 bit code of its
+//              type, then its row and its col in 4 bits each
+//     index    int offset of every record, and one more for the end of the last record
+// A board with n chesspieces takes 3 + 2n bytes plus 4 in the index, a fraction of its text line,
+// and the index still gives board n at once, so workers can take any range of boards. The loader
+// builds the linked list straight from the mapped bytes. The chesspieces keep the order of the line,
+// since the search tries them in that order and so finds the same move. A row or col up to 15 is
+// stored as it is, so a chesspiece off the 8x8 board or two chesspieces on one square are found
+// invalid by the solver like the text line is. A line that cannot be stored at all (an unknown type,
+// a row or col over 15, more than 32 chesspieces or a bad number) is written without chesspieces
+// and with FLAG_INVALID, which the solver answers with "No solution".
+//
+// Usage: java BinaryPuzzleFile text2bin input.txt input.bin
+//        java BinaryPuzzleFile bin2text input.bin input.txt
+//
+// This needs to be compiled with Puzzle.java, PuzzleReader.java, Manifest.java, Node.java, ListOperations.java and Utilities.java.
+//
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+class BinaryPuzzleFile {
+
+  public static final int MAGIC = 0x43504233; // "CPB3", older files with fixed size records were "CPPB" and "CPB2"
+  public static final int HEADER_BYTES = 16;
+  public static final int MAX_PIECES = 32;
+  public static final int FLAG_WHITE_TO_MOVE = 1; // white makes the first move, which is always the case for now
+  public static final int FLAG_INVALID = 2; // the line could not be stored
+  private static final String CODES = "-kqrbnp--KQRBNP"; // chesspiece type of each 4 bit code
+  private static final int BOARD_SIZE = 8;
+
+  private MappedByteBuffer map; // the whole file
+  private int records; // number of boards in the file
+  private int index; // offset of the index
+
+  // constructor, maps a binary puzzle file
+  // Input: file name
+  public BinaryPuzzleFile(String fileName) throws IOException {
+    FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+    map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    channel.close();
+    if(map.limit() < HEADER_BYTES || map.getInt(0) != MAGIC || map.getInt(4) != BOARD_SIZE) {
+      throw new IOException("Not a binary puzzle file: " + fileName);
+    }
+    records = map.getInt(8);
+    index = map.getInt(12);
+    if(records < 0 || index < HEADER_BYTES || (long) index + 4L*(records+1) > map.limit()) {
+      throw new IOException("Binary puzzle file is truncated: " + fileName);
+    }
+  }
+
+  // return the number of boards in the file
+  public int getRecords() {
+    return this.records;
+  }
+
+  // Input: board number, counting from 1
+  // Output: returns the offset of its record
+  private int offset(int boardNo) {
+    if(boardNo < 1 || boardNo > records) {
+      Utilities.errExit("No board " + boardNo + " in binary puzzle file");
+    }
+    return map.getInt(index + 4*(boardNo-1));
+  }
+
+  // Method to read the number of chesspieces of a record, making sure the record holds them
+  // Input: board number
+  // Output: returns the number of chesspieces
+  private int getCount(int boardNo) {
+    int offset = offset(boardNo);
+    int end = map.getInt(index + 4*boardNo);
+    int count = (offset >= HEADER_BYTES && offset + 3 <= end && end <= index) ? map.get(offset + 2) & 0xff : -1;
+    if(count < 0 || count > MAX_PIECES || end != offset + 3 + 2*count) {
+      Utilities.errExit("Board " + boardNo + " of the binary puzzle file is broken");
+    }
+    return count;
+  }
+
+  // Input: board number and the number of a chesspiece of its record
+  // Output: returns the packed chesspiece, code << 8 | row << 4 | col
+  private int getPiece(int boardNo, int piece) {
+    return map.getShort(offset(boardNo) + 3 + 2*piece) & 0xffff;
+  }
+
+  // Input: board number
+  // Output: returns the number of moves of that board
+  public int getMoves(int boardNo) {
+    return map.get(offset(boardNo));
+  }
+
+  // Input: board number
+  // Output: returns if the line of the board could not be stored
+  public boolean isInvalid(int boardNo) {
+    return (map.get(offset(boardNo) + 1) & FLAG_INVALID) != 0;
+  }
+
+  // Input: board number
+  // Output: returns the hash of the bytes of its record, for the manifest
+  public long getHash(int boardNo) {
+    return Manifest.hash(map, offset(boardNo), map.getInt(index + 4*boardNo));
+  }
+
+  // Method to build the linked list of a board straight from its record
+  // The chesspieces are inserted in the order of the line, like Puzzle.toList does
+  // Input: board number and the head of an empty list
+  // Output: returns the list
+  public Node toList(int boardNo, Node head) {
+    int count = getCount(boardNo);
+    for(int piece = 0; piece < count; piece++) {
+      int packed = getPiece(boardNo, piece);
+      head = ListOperations.insert(head, new Node(CODES.charAt(packed >>> 8), (packed >>> 4) & 15, packed & 15));
+    }
+    return head;
+  }
+
+  // Method to decide if a puzzle can be stored
+  // Input: puzzle
+  // Output: returns if every chesspiece has a known type and a row and col up to 15
+  private static boolean isStorable(Puzzle puzzle) {
+    if(puzzle.isInvalid() || puzzle.getCount() > MAX_PIECES) {
+      return false;
+    }
+    for(int i = 0; i < puzzle.getCount(); i++) {
+      int row = puzzle.getRow(i);
+      int col = puzzle.getCol(i);
+      if(row < 0 || col < 0 || row > 15 || col > 15 || CODES.indexOf(puzzle.getType(i)) <= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Input: puzzle
+  // Output: returns the size of its record
+  public static int recordBytes(Puzzle puzzle) {
+    return 3 + (isStorable(puzzle) ? 2*puzzle.getCount() : 0);
+  }
+
+  // Method to pack one puzzle into a record
+  // Input: puzzle and the buffer to write the record into
+  // Output: void
+  public static void writeRecord(Puzzle puzzle, ByteBuffer record) {
+    boolean invalid = !isStorable(puzzle);
+    int count = invalid ? 0 : puzzle.getCount();
+    record.put((byte) puzzle.getMoves());
+    record.put((byte) (FLAG_WHITE_TO_MOVE | (invalid ? FLAG_INVALID : 0)));
+    record.put((byte) count);
+    for(int i = 0; i < count; i++) {
+      record.putShort((short) (CODES.indexOf(puzzle.getType(i)) << 8 | puzzle.getRow(i) << 4 | puzzle.getCol(i)));
+    }
+  }
+
+  // Method to convert a text puzzle file into a binary one
+  // Input: names of the text file and the binary file
+  // Output: void
+  public static void textToBinary(String textFile, String binaryFile) throws IOException {
+    FileChannel out = FileChannel.open(Paths.get(binaryFile), StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    PuzzleReader reader = new PuzzleReader(textFile, 1);
+    int[] offsets = new int[1024]; // where every record starts, and where the next one would
+    int records = 0;
+    long position = HEADER_BYTES;
+    offsets[0] = HEADER_BYTES;
+    ArrayList<Puzzle> puzzles;
+    while(!(puzzles = reader.readBatch()).isEmpty()) {
+      int bytes = 0;
+      for(Puzzle puzzle : puzzles) {
+        bytes += recordBytes(puzzle);
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(bytes);
+      for(Puzzle puzzle : puzzles) {
+        writeRecord(puzzle, buffer);
+        if(records+1 == offsets.length) {
+          offsets = Arrays.copyOf(offsets, 2*offsets.length);
+        }
+        offsets[records+1] = offsets[records] + recordBytes(puzzle);
+        records++;
+      }
+      if(position + bytes > Integer.MAX_VALUE - 4L*(records+1)) {
+        Utilities.errExit("Too many puzzles for one binary puzzle file");
+      }
+      buffer.flip();
+      while(buffer.hasRemaining()) {
+        position += out.write(buffer, position);
+      }
+    }
+    reader.close();
+    ByteBuffer index = ByteBuffer.allocate(4*(records+1));
+    index.asIntBuffer().put(offsets, 0, records+1);
+    while(index.hasRemaining()) {
+      out.write(index, position + index.position());
+    }
+    // the header goes in last, so a half written file is never taken for a complete one
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    header.putInt(MAGIC);
+    header.putInt(BOARD_SIZE);
+    header.putInt(records);
+    header.putInt((int) position);
+    header.rewind();
+    out.write(header, 0);
+    out.close();
+  }
+
+  // Method to convert a binary puzzle file back into text
+  // Input: names of the binary file and the text file
+  // Output: void
+  public static void binaryToText(String binaryFile, String textFile) throws IOException {
+    BinaryPuzzleFile file = new BinaryPuzzleFile(binaryFile);
+    BufferedWriter out = new BufferedWriter(new FileWriter(textFile));
+    for(int boardNo = 1; boardNo <= file.getRecords(); boardNo++) {
+      StringBuilder line = new StringBuilder();
+      line.append(file.getMoves(boardNo));
+      // an invalid record has no chesspieces, which the solver also answers with "No solution"
+      int count = file.getCount(boardNo);
+      for(int piece = 0; piece < count; piece++) {
+        int packed = file.getPiece(boardNo, piece);
+        line.append(' ').append(CODES.charAt(packed >>> 8)).append(' ').append(packed & 15).append(' ').append((packed >>> 4) & 15);
+      }
+      out.write(line.toString());
+      out.newLine();
+    }
+    out.close();
+  }
+
+  // main method, converts between the two formats
+  public static void main(String[] args) {
+    if(args.length != 3) {
+      Utilities.errExit("Usage: java BinaryPuzzleFile text2bin|bin2text <from> <to>");
+    }
+    try {
+      if(args[0].equals("text2bin")) {
+        textToBinary(args[1], args[2]);
+      }
+      else if(args[0].equals("bin2text")) {
+        binaryToText(args[1], args[2]);
+      }
+      else {
+        Utilities.errExit("Unknown conversion: " + args[0]);
+      }
+    }
+    catch(IOException e) {
+      Utilities.errExit("Error while converting: " + e.getMessage());
+    }
+  }
+}
+
+// End
@@ -0,0 +1,155 @@
+// Filename: Bitboard.java
+//
+// Contains class Bitboard that keeps a set of squares of a board of up to 16x16 as bits
+//
+// Square (row, col) is bit (col-1)*board_size + (row-1), so going through the bits in order visits the
+// squares col by col and, within a col, row by row, which is the order the search has always tried
+// its moves in. An 8x8 board fits in one long, a 16x16 board takes four.
+// The squares a chesspiece could move to on an empty board (its reach) are worked out once per board
+// size and type from the getMoves of its class, so they follow exactly the rules the moves are
+// checked with. The search then only tries the squares in the reach of a chesspiece that are not
+// taken by its own color, instead of every square of the board, and blocking is looked up in the
+// occupied squares instead of the list.
+//
+// This needs to be compiled with Node.java, Zobrist.java and Utilities.java.
+//
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+class Bitboard {
+
+  private static final String pieceTypes = "kqrbnpKQRBNP"; // index of each chesspiece type in the reach table
+  // reach of every type on every square, for each board size, built the first time the size is used
+  private static final AtomicReferenceArray<Bitboard[][]> reachTables =
+    new AtomicReferenceArray<Bitboard[][]>(Zobrist.MAX_BOARD_SIZE + 1);
+
+  private int board_size;
+  private long[] words; // the bits, 64 squares per long
+
+  // constructor, an empty set
+  // Input: board size
+  public Bitboard(int board_size) {
+    this.board_size = board_size;
+    this.words = new long[(board_size*board_size + 63) >>> 6];
+  }
+
+  // Input: row, col and board size
+  // Output: returns the bit of the square
+  public static int square(int row, int col, int board_size) {
+    return (col-1)*board_size + (row-1);
+  }
+
+  // Input: bit of a square and board size
+  // Output: returns the row of the square
+  public static int row(int square, int board_size) {
+    return square % board_size + 1;
+  }
+
+  // Input: bit of a square and board size
+  // Output: returns the col of the square
+  public static int col(int square, int board_size) {
+    return square / board_size + 1;
+  }
+
+  // add a square to the set
+  public void set(int square) {
+    words[square >>> 6] |= 1L << square;
+  }
+
+  // Input: row and col, which may be off the board
+  // Output: returns if the square is in the set, false for squares off the board
+  public boolean contains(int row, int col) {
+    if(row < 1 || col < 1 || row > board_size || col > board_size) {
+      return false;
+    }
+    int square = square(row, col, board_size);
+    return (words[square >>> 6] & (1L << square)) != 0;
+  }
+
+  // Method to find the next square of the set
+  // Input: bit to start looking from
+  // Output: returns the first square of the set at or after it, or -1 if there is none
+  public int next(int from) {
+    int word = from >>> 6;
+    if(word >= words.length) {
+      return -1;
+    }
+    long bits = words[word] & (-1L << from);
+    while(bits == 0) {
+      if(++word == words.length) {
+        return -1;
+      }
+      bits = words[word];
+    }
+    return (word << 6) + Long.numberOfTrailingZeros(bits);
+  }
+
+  // Input: another set on the same board
+  // Output: returns a new set with the squares of this one that are not in the other
+  public Bitboard minus(Bitboard other) {
+    Bitboard result = new Bitboard(board_size);
+    for(int i = 0; i < words.length; i++) {
+      result.words[i] = words[i] & ~other.words[i];
+    }
+    return result;
+  }
+
+  // Method to collect the squares of the chesspieces of a list
+  // Input: list, board size, and the color to collect, or null for both colors
+  // Output: returns the occupied squares, chesspieces off the board are left out
+  public static Bitboard occupied(Node list, int board_size, Boolean color) {
+    Bitboard occupied = new Bitboard(board_size);
+    for(Node piece = list.getNext(); piece != null; piece = piece.getNext()) {
+      int row = piece.getRow();
+      int col = piece.getCol();
+      if((color == null || piece.getColor() == color) && row >= 1 && col >= 1 && row <= board_size && col <= board_size) {
+        occupied.set(square(row, col, board_size));
+      }
+    }
+    return occupied;
+  }
+
+  // Method to return the reach of a chesspiece, the squares getMoves allows it to move to from
+  // where it is if nothing was in the way. The returned set is shared and must not be changed
+  // Input: chesspiece and board size
+  // Output: returns the reach
+  public static Bitboard reach(Node piece, int board_size) {
+    int row = piece.getRow();
+    int col = piece.getCol();
+    if(row < 1 || col < 1 || row > board_size || col > board_size) {
+      return computeReach(piece.getChessPiece(), row, col, board_size); // never the case on a valid board
+    }
+    Bitboard[][] table = reachTables.get(board_size);
+    if(table == null) {
+      table = new Bitboard[pieceTypes.length()][board_size*board_size];
+      for(int type = 0; type < pieceTypes.length(); type++) {
+        for(int square = 0; square < board_size*board_size; square++) {
+          Node node = new Node(pieceTypes.charAt(type), row(square, board_size), col(square, board_size));
+          table[type][square] = computeReach(node.getChessPiece(), row(square, board_size), col(square, board_size), board_size);
+        }
+      }
+      // threads that build the same table at once all get the one that was stored first
+      if(!reachTables.compareAndSet(board_size, null, table)) {
+        table = reachTables.get(board_size);
+      }
+    }
+    return table[pieceTypes.indexOf(Utilities.returnChessPieceType(piece))][square(row, col, board_size)];
+  }
+
+  // Method to ask getMoves about every square of the board
+  // Input: chesspiece, its row and col and the board size
+  // Output: returns the squares getMoves accepts as destination
+  private static Bitboard computeReach(ChessPiece piece, int row, int col, int board_size) {
+    Bitboard reach = new Bitboard(board_size);
+    for(int destCol = 1; destCol <= board_size; destCol++) {
+      for(int destRow = 1; destRow <= board_size; destRow++) {
+        if(piece.getMoves(row, col, destRow, destCol, false) != null) {
+          reach.set(square(destRow, destCol, board_size));
+        }
+      }
+    }
+    return reach;
+  }
+}
+
+// End
@@ -0,0 +1,192 @@
+// Filename: BoardValidator.java
+//
+// Contains class BoardValidator that checks in one pass over the chesspieces if a board can be solved
+//
+// Each chesspiece sets its bit in an occupancy bitmap, which finds two chesspieces on one square
+// right away, and adds one to the counter of its type. Once all of them are added, the counters
+// tell if the material is possible:
+//     - exactly one king of each color
+//     - no more than board_size pawns and 2*board_size chesspieces of a color
+//     - no more queens, rooks, bishops and knights than the pawns that are missing could have
+//       promoted to
+// Chesspieces off the board, of an unknown type or pawns on the first or last row are rejected as
+// they are added. ChessPuzzle.validate also rejects boards where black, who does not move first,
+// is in check.
+//
+// Run on its own it pre-filters a puzzle file before any search starts, printing every bad line:
+//     java BoardValidator input.txt
+//
+// This needs to be compiled with ChessPuzzle.java, Puzzle.java, PuzzleReader.java, Node.java, ListOperations.java and Utilities.java.
+//
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+class BoardValidator {
+
+  private static final String TYPES = "kqrbnpKQRBNP"; // index of each type into the counters
+  private static final int[] STARTING = {1, 1, 2, 2, 2}; // king, queens, rooks, bishops and knights a side starts with
+
+  private int board_size;
+  private long[] occupancy; // bit (row-1)*board_size + (col-1) is set for every occupied square
+  private int[] counts = new int[TYPES.length()]; // chesspieces of each type
+  private String reason; // why the board is invalid, null while it is valid
+
+  // constructor
+  // Input: board size
+  public BoardValidator(int board_size) {
+    this.board_size = board_size;
+    this.occupancy = new long[(board_size*board_size + 63) / 64];
+  }
+
+  // Method to start over with an empty board
+  // Input: none
+  // Output: void
+  public void reset() {
+    Arrays.fill(occupancy, 0);
+    Arrays.fill(counts, 0);
+    reason = null;
+  }
+
+  // Method to add one chesspiece
+  // Input: type, row and col of the chesspiece
+  // Output: returns false once the board is known to be invalid
+  public boolean add(char type, int row, int col) {
+    if(reason != null) {
+      return false;
+    }
+    int index = TYPES.indexOf(type);
+    if(index < 0) {
+      reason = "unknown chesspiece " + type;
+      return false;
+    }
+    if(row < 1 || col < 1 || row > board_size || col > board_size) {
+      reason = type + " at " + col + " " + row + " is off the board";
+      return false;
+    }
+    if((type == 'p' || type == 'P') && (row == 1 || row == board_size)) {
+      reason = "pawn on row " + row;
+      return false;
+    }
+    int square = (row-1)*board_size + (col-1);
+    long bit = 1L << (square & 63);
+    if((occupancy[square >>> 6] & bit) != 0) {
+      reason = "two chesspieces at " + col + " " + row;
+      return false;
+    }
+    occupancy[square >>> 6] |= bit;
+    counts[index]++;
+    return true;
+  }
+
+  // Method to finish the board, checking the counters
+  // Input: none
+  // Output: returns null if the board is valid, or why it is not
+  public String finish() {
+    for(int color = 0; color < 2 && reason == null; color++) {
+      int offset = color*6;
+      String side = (color == 0) ? "white" : "black";
+      if(counts[offset] != 1) {
+        reason = counts[offset] + " " + side + " kings";
+        break;
+      }
+      int pieces = 0;
+      int promoted = 0;
+      for(int i = 0; i < 6; i++) {
+        pieces += counts[offset+i];
+      }
+      for(int i = 1; i < 5; i++) {
+        promoted += Math.max(0, counts[offset+i] - STARTING[i]);
+      }
+      int pawns = counts[offset+5];
+      if(pawns > board_size) {
+        reason = pawns + " " + side + " pawns";
+      }
+      else if(pieces > 2*board_size) {
+        reason = pieces + " " + side + " chesspieces";
+      }
+      else if(promoted > board_size - pawns) {
+        reason = side + " has more promoted chesspieces than missing pawns";
+      }
+    }
+    return reason;
+  }
+
+  // Method to validate a list
+  // Input: list and board size
+  // Output: returns null if the board is valid, or why it is not
+  public static String validate(Node head, int board_size) {
+    BoardValidator validator = new BoardValidator(board_size);
+    for(Node piece = head.getNext(); piece != null; piece = piece.getNext()) {
+      if(piece.getChessPiece() == null) {
+        return "unknown chesspiece";
+      }
+      if(!validator.add(Utilities.returnChessPieceType(piece), piece.getRow(), piece.getCol())) {
+        break;
+      }
+    }
+    return validator.finish();
+  }
+
+  // Method to validate a parsed puzzle, before any list is made of it
+  // Input: puzzle
+  // Output: returns null if the board is valid, or why it is not
+  public String validate(Puzzle puzzle) {
+    if(puzzle.isInvalid()) {
+      return "negative col or row";
+    }
+    reset();
+    for(int i = 0; i < puzzle.getCount(); i++) {
+      if(!add(puzzle.getType(i), puzzle.getRow(i), puzzle.getCol(i))) {
+        break;
+      }
+    }
+    return finish();
+  }
+
+  // main method, prints the lines of a puzzle file that would not be solved
+  public static void main(String[] args) {
+    if(args.length == 3 && args[0].equals("--board-size")) {
+      try {
+        ChessPuzzle.setBoardSize(Integer.parseInt(args[1]));
+      }
+      catch(NumberFormatException e) {
+        Utilities.errExit("Board size must be an integer");
+      }
+    }
+    else if(args.length != 1) {
+      Utilities.errExit("Usage: java BoardValidator [--board-size <n>] <puzzle file>");
+    }
+    try {
+      BoardValidator validator = new BoardValidator(ChessPuzzle.boardSize);
+      PuzzleReader reader = new PuzzleReader(args[args.length-1], 1);
+      int boards = 0;
+      int invalid = 0;
+      ArrayList<Puzzle> puzzles;
+      while(!(puzzles = reader.readBatch()).isEmpty()) {
+        for(Puzzle puzzle : puzzles) {
+          String reason = validator.validate(puzzle);
+          if(reason == null) {
+            // the material is fine, the side not to move must not be in check either
+            ChessPuzzle c = new ChessPuzzle(puzzle.getBoardNo(), puzzle.getMoves(), ChessPuzzle.boardSize);
+            c.setHead(puzzle.toList(c.getHead()));
+            reason = c.invalidReason();
+          }
+          if(reason != null) {
+            System.out.println("Board " + puzzle.getBoardNo() + ": " + reason);
+            invalid++;
+          }
+          boards++;
+        }
+      }
+      reader.close();
+      System.out.println(invalid + " of " + boards + " boards are invalid");
+    }
+    catch(IOException e) {
+      Utilities.errExit("Exception occurred trying to read file");
+    }
+  }
+}
+
+// End
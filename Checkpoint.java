@@ -0,0 +1,180 @@
+// Filename: Checkpoint.java
+//
+// Contains class Checkpoint that keeps the progress of a batch run in a file, so that a run that
+// died can be resumed where it stopped instead of from the first board
+//
+// The file is a line "checkpoint <last written board> <bytes of the solution file> <bytes of the
+// statistics file>" followed by one line "<board> <answer>" for every board that was solved but
+// could not be written yet, because an earlier board was still being searched. The statistics
+// length is -1 when SearchStats is off. It is written to a temporary file first and then renamed
+// over the old one, so it is always either the old or the new checkpoint. Both files are flushed
+// before their lengths are taken, so everything up to those lengths is complete lines. On
+// --resume, the solution and statistics files are cut back to those lengths, the written boards
+// are skipped and the boards that were solved early are answered from the checkpoint without
+// searching them again. A statistics file without a recorded length (the checkpoint was saved
+// with the statistics off) is started over, since it does not match the solution file.
+//
+// This needs to be compiled with Utilities.java.
+//
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+class Checkpoint {
+
+  private String fileName; // the checkpoint file
+  private String outputFile; // the solution file it describes
+  private String statsFile; // the statistics file it describes, null when SearchStats is off
+  private long intervalNanos; // time between two checkpoints
+  private long lastSave; // System.nanoTime() of the last checkpoint
+  private int lastWritten; // board number of the last board in the solution file
+  private long writtenBytes; // length of the solution file at the last checkpoint
+  private long statsBytes = -1; // length of the statistics file at the last checkpoint, -1 if unknown
+  private ConcurrentHashMap<Integer, String> early = new ConcurrentHashMap<Integer, String>(); // solved, not yet written
+
+  // constructor, for a run from the first board
+  // Input: names of the solution and statistics files (null if there is none), seconds between
+  // checkpoints and the first board number
+  public Checkpoint(String outputFile, String statsFile, int intervalSeconds, int firstBoardNo) {
+    this.fileName = outputFile + ".checkpoint";
+    this.outputFile = outputFile;
+    this.statsFile = statsFile;
+    this.intervalNanos = intervalSeconds * 1000000000L;
+    this.lastSave = System.nanoTime();
+    this.lastWritten = firstBoardNo - 1;
+  }
+
+  // Method to read the checkpoint of an earlier run, if there is one
+  // Input: none
+  // Output: returns if a checkpoint was read, throws IOException if the file is broken
+  public boolean load() throws IOException {
+    File file = new File(fileName);
+    if(!file.exists()) {
+      return false;
+    }
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    try {
+      String[] header = in.readLine().split(" ");
+      // checkpoints from before the statistics length have only three fields
+      if(header.length < 3 || header.length > 4 || !header[0].equals("checkpoint")) {
+        throw new IOException("Not a checkpoint file: " + fileName);
+      }
+      lastWritten = Integer.parseInt(header[1]);
+      writtenBytes = Long.parseLong(header[2]);
+      statsBytes = (header.length == 4) ? Long.parseLong(header[3]) : -1;
+      String line;
+      while((line = in.readLine()) != null) {
+        int space = line.indexOf(' ');
+        early.put(Integer.parseInt(line.substring(0, space)), line.substring(space + 1));
+      }
+    }
+    catch(NullPointerException | IndexOutOfBoundsException | NumberFormatException e) {
+      throw new IOException("Broken checkpoint file: " + fileName);
+    }
+    finally {
+      in.close();
+    }
+    return true;
+  }
+
+  // return the board number of the last board in the solution file
+  public int getLastWritten() {
+    return this.lastWritten;
+  }
+
+  // return the length of the solution file at the last checkpoint
+  public long getWrittenBytes() {
+    return this.writtenBytes;
+  }
+
+  // Output: returns if the statistics file of the resumed run is kept, because its length was recorded
+  public boolean keepsStats() {
+    return this.statsBytes >= 0;
+  }
+
+  // Input: board number
+  // Output: returns the answer of a board that an earlier run solved but did not write, or null
+  public String earlyAnswer(int boardNo) {
+    return early.get(boardNo);
+  }
+
+  // Method to remember the answer of a board until it is written, called by the solve stage
+  // Input: board number and its answer
+  // Output: void
+  public void solved(int boardNo, String answer) {
+    early.put(boardNo, answer);
+  }
+
+  // Method to note that a board was written, called by the write stage for every board in order,
+  // which saves a checkpoint once enough time has passed
+  // Input: board number and the writers of the solution and statistics files (null if there is none)
+  // Output: void
+  public void written(int boardNo, BufferedWriter writer, BufferedWriter statsWriter) throws IOException {
+    early.remove(boardNo);
+    lastWritten = boardNo;
+    if(System.nanoTime() - lastSave >= intervalNanos) {
+      save(writer, statsWriter);
+    }
+  }
+
+  // Method to save a checkpoint
+  // Input: the writers of the solution and statistics files (null if there is none), flushed first
+  // so their lengths only count complete lines
+  // Output: void
+  public void save(BufferedWriter writer, BufferedWriter statsWriter) throws IOException {
+    writer.flush();
+    writtenBytes = new File(outputFile).length();
+    statsBytes = -1;
+    if(statsWriter != null) {
+      statsWriter.flush();
+      statsBytes = new File(statsFile).length();
+    }
+    File temporary = new File(fileName + ".tmp");
+    BufferedWriter out = new BufferedWriter(new FileWriter(temporary));
+    out.write("checkpoint " + lastWritten + " " + writtenBytes + " " + statsBytes);
+    out.newLine();
+    for(Map.Entry<Integer, String> entry : early.entrySet()) {
+      if(entry.getKey() > lastWritten) {
+        out.write(entry.getKey() + " " + entry.getValue());
+        out.newLine();
+      }
+    }
+    out.close();
+    Files.move(temporary.toPath(), Paths.get(fileName), StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+    lastSave = System.nanoTime();
+  }
+
+  // Method to cut the solution and statistics files back to the last checkpoint, dropping lines
+  // written after it
+  // Input: none
+  // Output: void
+  public void truncateOutput() throws IOException {
+    truncate(outputFile, writtenBytes);
+    if(statsFile != null && keepsStats()) {
+      truncate(statsFile, statsBytes);
+    }
+  }
+
+  // Method to cut a file back to a length
+  // Input: name of the file and its length at the last checkpoint
+  // Output: void
+  private static void truncate(String name, long length) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(name, "rw");
+    try {
+      if(file.length() < length) {
+        throw new IOException(name + " is shorter than its checkpoint says");
+      }
+      file.setLength(length);
+    }
+    finally {
+      file.close();
+    }
+  }
+}
+
+// End
@@ -10,22 +10,107 @@
 // Santrupti Nerli, Jan 2017
 //
 import java.io.*;
+import java.util.ArrayList;
 
 class ChessPuzzle {
 
-  private static Node head; // linkedlist to store chesspieces
-  private static int board_size; // board_size
-  private static int board_no; // current board no, we are processing
-  private static int moves; //number of to find checkmate
+  private Node head; // linkedlist to store chesspieces
+  private int board_size; // board_size
+  private int board_no; // current board no, we are processing
+  private int moves; //number of to find checkmate
+  private boolean isValid; // whether the board passed the validity check
+  private boolean knownInvalid; // the board was found invalid while it was read, like a line a binary puzzle file could not store
+  private Node initialBoard; // copy of the board before the search moved anything
+  private Node finalBoard; // board after the first move of the solution, null if the search did not print one
+  private int[] firstMove; // the move that gave finalBoard, {col, row, destCol, destRow}
+  private String output; // what is written to solution.txt for this board
+  private long nodes; // positions searched for this board so far
+  private long deadline; // System.nanoTime() at which the search gives up, if there is a time limit
+  private SearchStats stats; // what the search did, only kept when SearchStats.ENABLED
+  private String source = "duplicate"; // where the answer came from, for the statistics
+  private long solveNanos; // time the solve stage took for this board
   public static BufferedWriter writer; // write to write to file
   public static final int possibleRowMoves[] = {-1, -1, 0, 1, 0, 1, 1, -1}; // these are the possible row moves for a king
   public static final int possibleColMoves[] = {0, -1, -1, -1, 1, 1, 0, 1}; // these are the possible col moves for a king
+  public static TranspositionTable table; // remembers searched positions, null when it is turned off
+  public static BufferedWriter statsWriter; // writer of the search statistics, null unless SearchStats.ENABLED
+  public static SolutionCache cache; // solutions of earlier runs kept on disk, null when it is turned off
+  public static ResultCache results; // recently solved puzzles kept in memory, null when it is turned off
+  private static Deduplicator duplicates; // solutions of the puzzles seen so far in this batch, null outside of a batch
+  public static String binaryInput; // binary puzzle file to read instead of input.txt, null for input.txt
+  public static String inputFile = "input.txt"; // puzzle file to read
+  public static String outputFile = "solution.txt"; // file the answers are written to
+  public static int firstBoardNo = 1; // board number of the first line of the puzzle file
+  public static int boardSize = 8; // rows and cols of the boards of the batch
+  public static Checkpoint checkpoint; // progress of the batch kept on disk, null when it is turned off
+  public static Manifest manifest; // answers of the lines of the previous run, null when it is turned off
+  private long contentHash; // hash of the line of the board, for the manifest
+  public static int solverThreads = Runtime.getRuntime().availableProcessors(); // threads of the solve stage
+  public static int reportSeconds = 0; // seconds between pipeline reports on stderr, 0 for none
+  public static Renderer renderer = new AnsiRenderer(); // prints the solved boards onto the console
+  public static long nodeLimit = 0; // positions a board may search before it is given up, 0 for no limit
+  public static long timeLimit = 0; // milliseconds a board may search before it is given up, 0 for no limit
+  private static final int BUDGET_MASK = 255; // the budget is looked at once every 256 positions
+  public static final ChessPuzzle END_OF_BATCH = new ChessPuzzle(); // marks the end of a batch in the pipeline queues
 
   // constructor
   public ChessPuzzle() {
     head = new Node();
   }
 
+  // constructor for a board of a batch, the chesspieces are inserted into getHead() afterwards
+  public ChessPuzzle(int board_no, int moves, int board_size) {
+    this();
+    this.board_no = board_no;
+    this.moves = moves;
+    this.board_size = board_size;
+  }
+
+  // return the list of the board
+  public Node getHead() {
+    return this.head;
+  }
+
+  // set the list of the board
+  public void setHead(Node head) {
+    this.head = head;
+  }
+
+  // mark the board invalid without checking it
+  public void setKnownInvalid() {
+    this.knownInvalid = true;
+  }
+
+  // set the hash of the line of the board
+  public void setContentHash(long contentHash) {
+    this.contentHash = contentHash;
+  }
+
+  // Method to set the size of the boards, for the tools that share this option
+  // Input: rows and cols of the boards
+  // Output: void, exits if the size is not supported
+  public static void setBoardSize(int board_size) {
+    if(board_size < 1 || board_size > Zobrist.MAX_BOARD_SIZE) {
+      Utilities.errExit("Board size must be between 1 and " + Zobrist.MAX_BOARD_SIZE);
+    }
+    boardSize = board_size;
+  }
+
+  // return the board number
+  public int getBoardNo() {
+    return this.board_no;
+  }
+
+  // return the answer for solution.txt, once the board is solved
+  public String getOutput() {
+    return this.output;
+  }
+
+  // return the board size
+  public int getBoardSize() {
+    return this.board_size;
+  }
+
   // Method to perform capture.
   // First, it finds a node that contains piece to capture and captures it
   // Input: Node containing piece to capture
@@ -228,6 +313,17 @@ class ChessPuzzle {
     if (determineCheck(list,!player)) // if opponent in check, then player shouldn't be moving. This is probably checkmate
         return false;
 
+    return makeLegalMove(list, move);
+  }
+
+  // second half of makeValidMove, for callers that already know the opponent is not in check
+  // Input: chessboard list, and single move, which is an int array of length 4
+  // Output: boolean whether move is valid. If move is possible, the move is performed on list
+  public boolean makeLegalMove(Node list, int[] move) {
+
+    Node toMove = ListOperations.findChessPiece(list,move[1],move[0]);
+    boolean player = toMove.getChessPiece().getColor();
+
     Node copy = ListOperations.listCopy(list); // just to be careful, make moves on a copy
     boolean[] moveOutput = makeMoves(copy, move, false);
     boolean possible = moveOutput[0];  // now call makeMoves on the copy
@@ -260,11 +356,25 @@ class ChessPuzzle {
   // Input: color of the king
   // Output: returns if there is a check or not
   public boolean determineCheck(Node list, boolean kingColor) {
+    if(SearchStats.ENABLED && stats != null) {
+      long start = System.nanoTime();
+      boolean check = isKingAttacked(list, kingColor);
+      stats.check(System.nanoTime() - start);
+      return check;
+    }
+    return isKingAttacked(list, kingColor);
+  }
+
+  // the body of determineCheck
+  // Input: color of the king
+  // Output: returns if there is a check or not
+  private boolean isKingAttacked(Node list, boolean kingColor) {
     // get the first valid chesspiece (remember not the head)
     Node piece = list.getNext();
     Node king  = getKingNode(list, kingColor);
     int row = king.getRow();
     int col = king.getCol();
+    Mailbox mailbox = null; // padded board, made for the first chesspiece that attacks along a line
 
     // loop through each of the remaining chesspieces and check for attack
     while(piece != null) {
@@ -274,9 +384,12 @@ class ChessPuzzle {
           return true;
         }
         else {
-          // for others, we need to see if someone is blocking for an opposite piece to give a check
-          int[] validMoves = piece.getChessPiece().getMoves(piece.getRow(), piece.getCol(), row, col, true);
-          if(checkBlock(list, validMoves, piece.getRow(), piece.getCol(), row, col, false)) {
+          // for others, we need to see if someone is blocking for an opposite piece to give a check,
+          // so walk from the piece towards the king until the first chesspiece
+          if(mailbox == null) {
+            mailbox = new Mailbox(list, board_size);
+          }
+          if(mailbox.isRayClear(piece.getRow(), piece.getCol(), row, col)) {
             return true;
           }
         }
@@ -287,120 +400,19 @@ class ChessPuzzle {
   }
 
   // Method to check if a king is in weak checkmate
+  // that is, in check with no square around him to step out of it
   // Input: color of the king
   // Output: returns if there is a weak checkmate or not
   public boolean determineWeakCheckmate(Node head, boolean kingColor) {
-    Node list = ListOperations.listCopy(head);
-    boolean checkmate = false;
-    // 8 surrounding moves. So a total of 8 positions to check. Let
-    // us start by assuming that the king can move to all 8 surrounding positions
-    int movePossibility[] = {1, 1, 1, 1, 1, 1, 1, 1};
-    int attackCtr = 0;
-    int spaceCtr = 0;
-
-    // get the king node, store the locations for accessibility
-    Node king = getKingNode(list, kingColor);
-    char type = Utilities.returnChessPieceType(king);
-    int row = king.getRow();
-    int col = king.getCol();
-
-    // proceed to verify the checkmate only if the given king is under check
-    if(!determineCheck(list, kingColor)) {
-      return false;
-    }
-
-    // for all possible moves around that king
-    for(int i =0; i < possibleRowMoves.length; i++) {
-      // avoid possible moves out of the board
-      if(isOutOfBoard(row+possibleRowMoves[i], col+possibleColMoves[i])) {
-        movePossibility[i] = 0;
-        continue;
-      }
-      // move the king to his adjacent position
-      int[] query = {col, row, col+possibleColMoves[i], row+possibleRowMoves[i]};
-      Node newList = ListOperations.listCopy(list);
-      boolean[] newPossibility = makeMoves(newList, query, false);
-
-      // perform the move (or not is there is a same colored piece in the adjacent location),
-      // then determine if he is still under check
-      // if so, then that move/location does not prevent the checkmate
-      if(determineCheck(newList, kingColor)) {
-        movePossibility[i] = 0;
-      }
-    }
-    // if all the possible places for that king are occupied, then he is under checkmate
-    for(int i = 0; i < movePossibility.length; i++) {
-      if(movePossibility[i] == 0) {
-        attackCtr++;
-      }
-    }
-    if(attackCtr == movePossibility.length) {
-      checkmate = true;
-    }
-    return checkmate;
+    return new Position(this, head).isWeakCheckmate(kingColor);
   }
 
   // Method to check if a king is in real checkmate
+  // that is, in weak checkmate and no chesspiece of his color can make a valid move
   // Input: color of the king
   // Output: returns if there is a real checkmate or not
   public boolean determineRealCheckmate(Node head, boolean kingColor) {
-    // create a copy of the original list
-    Node list = ListOperations.listCopy(head);
-    // fetch the king node
-    Node kingNode = getKingNode(list, kingColor);
-
-    boolean isCheckmate = false;
-    
-    // if the given king is under weak chckmate, then we want to
-    // place all possible pieces of same color that can block the checkmate
-    // given that the move for the piece is valid
-    if(determineWeakCheckmate(list, kingColor)) {
-
-        isCheckmate = true;   // assume checkmate is possible, since weak checkmate is possible
-
-        // loop over all squares to find the pieces
-        for (int col=1; col <= board_size; col++)
-        {
-            for (int row=1; row <= board_size; row++)
-            {
-                Node nodeSrc = ListOperations.findChessPiece(list,row,col);
-                if (nodeSrc == null) // no piece at src square
-                    continue;
-
-                ChessPiece atSrc = nodeSrc.getChessPiece(); // get the chesspiece at the src square
-                if (atSrc.getColor() != kingColor) // either no piece at src square or if piece there is not of starting color, then continue to the next square
-                    continue;
-
-                for (int destCol=1; destCol <= board_size; destCol++)
-                {
-                    for (int destRow=1; destRow <= board_size; destRow++)
-                    {
-                        Node copy = ListOperations.listCopy(list);
-                        int[] nextTry = new int[4];
-                        nextTry[0] = col;
-                        nextTry[1] = row;
-                        nextTry[2] = destCol;
-                        nextTry[3] = destRow;
-    
-                        char pieceType = Utilities.returnChessPieceType(nodeSrc);
-                        boolean possible = makeValidMove(copy,nextTry); // is this a valid move
-                        if (possible)  // if move is valid, player can escape check
-                        {
-                            isCheckmate = false;
-                            break;
-                        }
-                    }
-                    if (!isCheckmate)
-                        break;
-                }
-                if (!isCheckmate)
-                    break;
-            }
-            if (!isCheckmate)
-                break;
-        }
-    }
-    return isCheckmate;
+    return new Position(this, head).isRealCheckmate(kingColor);
   }
 
   // Method to write to the analysis.txt file
@@ -418,33 +430,70 @@ class ChessPuzzle {
 
   // Method to read from input.txt
   // for each chessboard and query, perform all the required operations
-  // an then proceed further
+  // an then proceed further. The file is read by a PuzzleReader, which parses
+  // big groups of lines in parallel, and the boards go through a Pipeline
+  // that validates, solves, prints and writes them on separate threads
   // Input: none
   // Output: void, jusr read and perform requested operations
   public static void readFromInputFile() {
 
-    int lineCtr = 0;
-    int[] query;
-    ChessPuzzle c = null;
+    duplicates = new Deduplicator();
+    // on --resume the boards that are already in the solution file are skipped
+    int skipTo = (checkpoint == null) ? firstBoardNo : checkpoint.getLastWritten() + 1;
+    Pipeline pipeline = new Pipeline(solverThreads, skipTo, reportSeconds, renderer);
+    pipeline.start();
 
     try {
-        BufferedReader reader = new BufferedReader(new FileReader("input.txt"));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            String[] args = line.split(" "); // Reader assumes that the input format is as given in the instruction
-            // If the line is 2i, then I know that it is a configuration of a ChessBoard
-            // so create a new ChessBoard here, parse board size and insert
+      if(binaryInput != null) {
+        // boards of a binary puzzle file are built straight from their records
+        if(boardSize != 8) {
+          Utilities.errExit("Binary puzzle files only hold 8x8 boards");
+        }
+        BinaryPuzzleFile file = new BinaryPuzzleFile(binaryInput);
+        for(int boardNo = 1; manifest != null && boardNo < skipTo - firstBoardNo + 1 && boardNo <= file.getRecords(); boardNo++) {
+          manifest.keep(file.getHash(boardNo));
+        }
+        for(int boardNo = skipTo - firstBoardNo + 1; boardNo <= file.getRecords(); boardNo++) {
+          ChessPuzzle c = new ChessPuzzle(firstBoardNo + boardNo - 1, file.getMoves(boardNo), 8);
+          c.setHead(file.toList(boardNo, c.getHead()));
+          if(file.isInvalid(boardNo)) {
+            c.setKnownInvalid();
+          }
+          if(manifest != null) {
+            c.setContentHash(file.getHash(boardNo));
+          }
+          pipeline.submit(c);
+        }
+      }
+      else {
+        PuzzleReader reader = new PuzzleReader(inputFile, firstBoardNo);
+        reader.setHashLines(manifest != null);
+        ArrayList<Puzzle> puzzles;
+        while (!(puzzles = reader.readBatch()).isEmpty()) {
+          for(Puzzle puzzle : puzzles) {
+            if(puzzle.getBoardNo() < skipTo) {
+              if(manifest != null) {
+                manifest.keep(puzzle.getHash());
+              }
+              continue;
+            }
+            // create a new ChessBoard here and insert
             // given chesspieces into the linked list
-            c = new ChessPuzzle();
-            board_no++;
-            moves = Integer.parseInt(args[0].substring(0,1));
-            board_size = 8;
-            for(int i = 1; i < args.length; i += 3) {
-              head = ListOperations.insert(head, new Node(args[i].charAt(0), Integer.parseInt(args[i+2]), Integer.parseInt(args[i+1])));
+            ChessPuzzle c = new ChessPuzzle(puzzle.getBoardNo(), puzzle.getMoves(), boardSize);
+            c.setHead(puzzle.toList(c.getHead()));
+            if(puzzle.isInvalid()) {
+              c.setKnownInvalid();
             }
-            performOperations(c);
+            c.setContentHash(puzzle.getHash());
+            pipeline.submit(c);
+          }
         }
         reader.close();
+      }
+      pipeline.finish();
+      if(checkpoint != null) {
+        checkpoint.save(writer, statsWriter);
+      }
     }
     catch (NumberFormatException e) {
         Utilities.errExit("All arguments must be integers"); // throw error incase parsing integer fails
@@ -457,13 +506,129 @@ class ChessPuzzle {
     }
   }
   
+  // Method to compute the transposition table key of a position below the root
+  // Input: Chessboard, the moves and the color that has to checkmate
+  // Output: returns the key, or 0 when there is no transposition table
+  public long positionKey(Node list, int moves, boolean color) {
+    if(table == null) {
+      return 0;
+    }
+    return Symmetry.canonicalHash(list, board_size) ^ Zobrist.movesKey(moves) ^ Zobrist.sideKey(color) ^ Zobrist.sizeKey(board_size);
+  }
+
+  // Method to answer a position below the root without searching it. Positions with few
+  // chesspieces are answered by the tablebases, the others by the transposition table.
+  // The tablebases only answer the search for white: the search for black lets white pick its
+  // first move and counts every position where white is to move below it as won, which no table holds
+  // Input: Chessboard, the moves, the color that has to checkmate and the key of the position
+  // Output: returns TranspositionTable.SOLUTION, NO_SOLUTION or UNKNOWN
+  public int lookupPosition(Node list, int moves, boolean color, long key) {
+    if(color && Tablebase.isLoaded() && board_size == 8) {
+      // the color that has to checkmate moves when an odd number of moves is left
+      int known = Tablebase.probeMate(list, (moves%2 == 1) == color, moves);
+      if(SearchStats.ENABLED && stats != null) {
+        stats.tbProbe(known != TranspositionTable.UNKNOWN);
+      }
+      if(known != TranspositionTable.UNKNOWN) {
+        return known;
+      }
+    }
+    if(table != null) {
+      int known = table.probe(key);
+      if(SearchStats.ENABLED && stats != null) {
+        stats.ttProbe(known != TranspositionTable.UNKNOWN);
+      }
+      return known;
+    }
+    return TranspositionTable.UNKNOWN;
+  }
+
+  // Method to count a searched position and, once every BUDGET_MASK+1 positions,
+  // make sure the board is still within its node and time budget
+  // Input: moves left at the position
+  // Output: void, throws SearchTimeoutException once a budget is used up
+  private void countNode(int moves) {
+    if(SearchStats.ENABLED && stats != null) {
+      stats.node(this.moves - moves);
+    }
+    if((++nodes & BUDGET_MASK) != 0) {
+      return;
+    }
+    if(nodeLimit > 0 && nodes >= nodeLimit) {
+      throw new SearchTimeoutException("node limit");
+    }
+    if(timeLimit > 0 && System.nanoTime() - deadline > 0) {
+      throw new SearchTimeoutException("timeout");
+    }
+  }
+
+  // Method to try a move of the search, counting it for the statistics
+  // Input: the position, a copy of its list and the move
+  // Output: returns if the move is valid, in which case it is performed on the copy
+  private boolean tryMove(Position position, Node copy, int[] move) {
+    if(SearchStats.ENABLED && stats != null) {
+      long start = System.nanoTime();
+      boolean legal = position.makeValidMove(copy, move);
+      stats.move(legal, System.nanoTime() - start);
+      return legal;
+    }
+    return position.makeValidMove(copy, move);
+  }
+
+  // Method to check a leaf of the search for a checkmate of either king, timing it for the statistics
+  // Input: the position
+  // Output: returns if one of the kings is checkmated
+  private boolean isCheckmate(Position position) {
+    if(SearchStats.ENABLED && stats != null) {
+      long start = System.nanoTime();
+      boolean mate = position.isRealCheckmate(false) || position.isRealCheckmate(true);
+      stats.mate(System.nanoTime() - start);
+      return mate;
+    }
+    return position.isRealCheckmate(false) || position.isRealCheckmate(true);
+  }
+
   // Method to determine if checkmate is possible for white
-  // in the given number of moves
+  // in the given number of moves. Positions below the root are looked up
+  // (in their canonical orientation) before they are searched. The root is never stored since
+  // its answer has to carry the actual move
   // Input: Chessboard and the moves
   // Output: returns true if black is checkmated
-    public String attemptCheckmateWhite(Node list, int moves){
+  public String attemptCheckmateWhite(Node list, int moves) {
+    if(moves == this.moves) {
+      return searchCheckmateWhite(list, moves);
+    }
+    long key = positionKey(list, moves, true);
+    int known = lookupPosition(list, moves, true, key);
+    if(known != TranspositionTable.UNKNOWN) {
+      return known == TranspositionTable.SOLUTION ? "Solution" : "No solution";
+    }
+    SlowNodeEvent event = new SlowNodeEvent();
+    event.begin();
+    String result = searchCheckmateWhite(list, moves);
+    event.end();
+    if(event.shouldCommit()) {
+      event.board = board_no;
+      event.movesLeft = moves;
+      event.white = true;
+      event.solved = !result.equals("No solution");
+      event.commit();
+    }
+    if(table != null) {
+      table.store(key, !result.equals("No solution"));
+    }
+    return result;
+  }
+
+  // Method that actually searches the moves for white
+  // Input: Chessboard and the moves
+  // Output: returns true if black is checkmated
+    public String searchCheckmateWhite(Node list, int moves){
+        countNode(moves);
+        // every move tried below starts from this position, so its checks are worked out once
+        Position position = new Position(this, list);
         if(moves == 0){
-            if(determineRealCheckmate(list, false) || determineRealCheckmate(list,true)){
+            if(isCheckmate(position)){
                 return "Solution";
             }
             return "No solution";
@@ -475,20 +640,20 @@ class ChessPuzzle {
                 int row = current.getRow();
                 char type = current.getPieceType();
                 if(current.getColor()){
-                    for(int i=1; i<=8; i++){
-                        for(int j=1; j<=8; j++){
-                            Node copy = ListOperations.listCopy(list);
-                            int[] attemptMove = {col,row,i,j};
-                            if(makeValidMove(copy,attemptMove)){
-                                if(!attemptCheckmateWhite(copy, moves-1).equals("No solution")){
-                                    current.setCol(i);
-                                    current.setRow(j);
-                                    // print the final board after performing all the moves
-                                    System.out.println("Board after performing all the valid moves");
-                                    Utilities.convertFromListToMatrixAndPrint(list, board_no, board_size);
-                                    System.out.println();
-                                    return type+" "+col+" "+row+" "+i+" "+j;
-                                }
+                    Bitboard targets = position.targets(current);
+                    for(int square = targets.next(0); square >= 0; square = targets.next(square+1)){
+                        int i = Bitboard.col(square, board_size);
+                        int j = Bitboard.row(square, board_size);
+                        Node copy = ListOperations.listCopy(list);
+                        int[] attemptMove = {col,row,i,j};
+                        if(tryMove(position,copy,attemptMove)){
+                            if(!attemptCheckmateWhite(copy, moves-1).equals("No solution")){
+                                current.setCol(i);
+                                current.setRow(j);
+                                // keep the final board after performing all the moves, it is printed with the solution
+                                finalBoard = list;
+                                firstMove = attemptMove;
+                                return type+" "+col+" "+row+" "+i+" "+j;
                             }
                         }
                     }
@@ -504,16 +669,17 @@ class ChessPuzzle {
                 int row = current.getRow();
                 char type = current.getPieceType();
                 if(current.getColor()){
-                    for(int i=1; i<=8; i++){
-                        for(int j=1; j<=8; j++){
-                            Node copy = ListOperations.listCopy(list);
-                            int[] attemptMove = {col,row,i,j};
-                            if(makeValidMove(copy,attemptMove)){
-                                if(!attemptCheckmateWhite(copy, moves-1).equals("No solution")){
-                                    current.setCol(i);
-                                    current.setRow(j);
-                                    return type+" "+col+" "+row+" "+i+" "+j;
-                                }
+                    Bitboard targets = position.targets(current);
+                    for(int square = targets.next(0); square >= 0; square = targets.next(square+1)){
+                        int i = Bitboard.col(square, board_size);
+                        int j = Bitboard.row(square, board_size);
+                        Node copy = ListOperations.listCopy(list);
+                        int[] attemptMove = {col,row,i,j};
+                        if(tryMove(position,copy,attemptMove)){
+                            if(!attemptCheckmateWhite(copy, moves-1).equals("No solution")){
+                                current.setCol(i);
+                                current.setRow(j);
+                                return type+" "+col+" "+row+" "+i+" "+j;
                             }
                         }
                     }
@@ -529,14 +695,15 @@ class ChessPuzzle {
                 int row = current.getRow();
                 char type = current.getPieceType();
                 if(!current.getColor()){
-                    for(int i=1; i<=8; i++){
-                        for(int j=1; j<=8; j++){
-                            Node copy = ListOperations.listCopy(list);
-                            int[] attemptMove = {col,row,i,j};
-                            if(makeValidMove(copy,attemptMove)){
-                                if(attemptCheckmateWhite(copy, moves-1).equals("No solution"))
-                                    return "No solution";
-                            }
+                    Bitboard targets = position.targets(current);
+                    for(int square = targets.next(0); square >= 0; square = targets.next(square+1)){
+                        int i = Bitboard.col(square, board_size);
+                        int j = Bitboard.row(square, board_size);
+                        Node copy = ListOperations.listCopy(list);
+                        int[] attemptMove = {col,row,i,j};
+                        if(tryMove(position,copy,attemptMove)){
+                            if(attemptCheckmateWhite(copy, moves-1).equals("No solution"))
+                                return "No solution";
                         }
                     }
                 }
@@ -551,16 +718,17 @@ class ChessPuzzle {
                 int row = current.getRow();
                 char type = current.getPieceType();
                 if(current.getColor()){
-                    for(int i=1; i<=8; i++){
-                        for(int j=1; j<=8; j++){
-                            Node copy = ListOperations.listCopy(list);
-                            int[] attemptMove = {col,row,i,j};
-                            if(makeValidMove(copy,attemptMove)){
-                                if(!attemptCheckmateWhite(copy, moves-1).equals("No solution")){
-                                    current.setCol(i);
-                                    current.setRow(j);
-                                    return type+" "+col+" "+row+" "+i+" "+j;
-                                }
+                    Bitboard targets = position.targets(current);
+                    for(int square = targets.next(0); square >= 0; square = targets.next(square+1)){
+                        int i = Bitboard.col(square, board_size);
+                        int j = Bitboard.row(square, board_size);
+                        Node copy = ListOperations.listCopy(list);
+                        int[] attemptMove = {col,row,i,j};
+                        if(tryMove(position,copy,attemptMove)){
+                            if(!attemptCheckmateWhite(copy, moves-1).equals("No solution")){
+                                current.setCol(i);
+                                current.setRow(j);
+                                return type+" "+col+" "+row+" "+i+" "+j;
                             }
                         }
                     }
@@ -572,12 +740,45 @@ class ChessPuzzle {
   }
     
   // Method to determine if checkmate is possible for black
-  // in the given number of moves
+  // in the given number of moves, looking positions up like
+  // attemptCheckmateWhite does
+  // Input: Chessboard and the moves
+  // Output: returns true if black is checkmated
+  public String attemptCheckmateBlack(Node list, int moves) {
+    if(moves == this.moves) {
+      return searchCheckmateBlack(list, moves);
+    }
+    long key = positionKey(list, moves, false);
+    int known = lookupPosition(list, moves, false, key);
+    if(known != TranspositionTable.UNKNOWN) {
+      return known == TranspositionTable.SOLUTION ? "Solution" : "No solution";
+    }
+    SlowNodeEvent event = new SlowNodeEvent();
+    event.begin();
+    String result = searchCheckmateBlack(list, moves);
+    event.end();
+    if(event.shouldCommit()) {
+      event.board = board_no;
+      event.movesLeft = moves;
+      event.white = false;
+      event.solved = !result.equals("No solution");
+      event.commit();
+    }
+    if(table != null) {
+      table.store(key, !result.equals("No solution"));
+    }
+    return result;
+  }
+
+  // Method that actually searches the moves for black
   // Input: Chessboard and the moves
   // Output: returns true if black is checkmated
-    public String attemptCheckmateBlack(Node list, int moves){
+    public String searchCheckmateBlack(Node list, int moves){
+        countNode(moves);
+        // every move tried below starts from this position, so its checks are worked out once
+        Position position = new Position(this, list);
         if(moves == 0){
-            if(determineRealCheckmate(list, false) || determineRealCheckmate(list,true)){
+            if(isCheckmate(position)){
                 return "Solution";
             }
             return "No solution";
@@ -589,20 +790,20 @@ class ChessPuzzle {
                 int row = current.getRow();
                 char type = current.getPieceType();
                 if(current.getColor()){
-                    for(int i=1; i<=8; i++){
-                        for(int j=1; j<=8; j++){
-                            Node copy = ListOperations.listCopy(list);
-                            int[] attemptMove = {col,row,i,j};
-                            if(makeValidMove(copy,attemptMove)){
-                                if(!attemptCheckmateBlack(copy, moves-1).equals("No solution")){
-                                    current.setCol(i);
-                                    current.setRow(j);
-                                    // print the final board after performing all the moves
-                                    System.out.println("Board after performing all the valid moves");
-                                    Utilities.convertFromListToMatrixAndPrint(list, board_no, board_size);
-                                    System.out.println();
-                                    return "Black can win";
-                                }
+                    Bitboard targets = position.targets(current);
+                    for(int square = targets.next(0); square >= 0; square = targets.next(square+1)){
+                        int i = Bitboard.col(square, board_size);
+                        int j = Bitboard.row(square, board_size);
+                        Node copy = ListOperations.listCopy(list);
+                        int[] attemptMove = {col,row,i,j};
+                        if(tryMove(position,copy,attemptMove)){
+                            if(!attemptCheckmateBlack(copy, moves-1).equals("No solution")){
+                                current.setCol(i);
+                                current.setRow(j);
+                                // keep the final board after performing all the moves, it is printed with the solution
+                                finalBoard = list;
+                                firstMove = attemptMove;
+                                return "Black can win";
                             }
                         }
                     }
@@ -618,16 +819,17 @@ class ChessPuzzle {
                 int row = current.getRow();
                 char type = current.getPieceType();
                 if(!current.getColor()){
-                    for(int i=1; i<=8; i++){
-                        for(int j=1; j<=8; j++){
-                            Node copy = ListOperations.listCopy(list);
-                            int[] attemptMove = {col,row,i,j};
-                            if(makeValidMove(copy,attemptMove)){
-                                if(!attemptCheckmateBlack(copy, moves-1).equals("No solution")){
-                                    current.setCol(i);
-                                    current.setRow(j);
-                                    return "Black can win";
-                                }
+                    Bitboard targets = position.targets(current);
+                    for(int square = targets.next(0); square >= 0; square = targets.next(square+1)){
+                        int i = Bitboard.col(square, board_size);
+                        int j = Bitboard.row(square, board_size);
+                        Node copy = ListOperations.listCopy(list);
+                        int[] attemptMove = {col,row,i,j};
+                        if(tryMove(position,copy,attemptMove)){
+                            if(!attemptCheckmateBlack(copy, moves-1).equals("No solution")){
+                                current.setCol(i);
+                                current.setRow(j);
+                                return "Black can win";
                             }
                         }
                     }
@@ -643,14 +845,15 @@ class ChessPuzzle {
                 int row = current.getRow();
                 char type = current.getPieceType();
                 if(current.getColor()){
-                    for(int i=1; i<=8; i++){
-                        for(int j=1; j<=8; j++){
-                            Node copy = ListOperations.listCopy(list);
-                            int[] attemptMove = {col,row,i,j};
-                            if(makeValidMove(copy,attemptMove)){
-                                if(attemptCheckmateBlack(copy, moves-1).equals("No solution"))
-                                    return "No Solution";
-                            }
+                    Bitboard targets = position.targets(current);
+                    for(int square = targets.next(0); square >= 0; square = targets.next(square+1)){
+                        int i = Bitboard.col(square, board_size);
+                        int j = Bitboard.row(square, board_size);
+                        Node copy = ListOperations.listCopy(list);
+                        int[] attemptMove = {col,row,i,j};
+                        if(tryMove(position,copy,attemptMove)){
+                            if(attemptCheckmateBlack(copy, moves-1).equals("No solution"))
+                                return "No Solution";
                         }
                     }
                 }
@@ -665,16 +868,17 @@ class ChessPuzzle {
                 int row = current.getRow();
                 char type = current.getPieceType();
                 if(!current.getColor()){
-                    for(int i=1; i<=8; i++){
-                        for(int j=1; j<=8; j++){
-                            Node copy = ListOperations.listCopy(list);
-                            int[] attemptMove = {col,row,i,j};
-                            if(makeValidMove(copy,attemptMove)){
-                                if(!attemptCheckmateBlack(copy, moves-1).equals("No solution")){
-                                    current.setCol(i);
-                                    current.setRow(j);
-                                    return "Black can win";
-                                }
+                    Bitboard targets = position.targets(current);
+                    for(int square = targets.next(0); square >= 0; square = targets.next(square+1)){
+                        int i = Bitboard.col(square, board_size);
+                        int j = Bitboard.row(square, board_size);
+                        Node copy = ListOperations.listCopy(list);
+                        int[] attemptMove = {col,row,i,j};
+                        if(tryMove(position,copy,attemptMove)){
+                            if(!attemptCheckmateBlack(copy, moves-1).equals("No solution")){
+                                current.setCol(i);
+                                current.setRow(j);
+                                return "Black can win";
                             }
                         }
                     }
@@ -685,64 +889,435 @@ class ChessPuzzle {
         }
   }
   
-  // Method to perform all the requested operations
-  // namely, check validity, identify check,
-  // identify strong and weak checkmates and perform moves
-  // Input: ChessBoard and the query
-  // Output: returns the count
-  public static void performOperations(ChessPuzzle c) {
-    try {
-      // check the king checks and weak and strong checkmates
-      boolean isWhiteKingUnderAttack = c.determineCheck(head, true);
-      boolean isBlackKingUnderAttack = c.determineCheck(head, false);
-      boolean weakCheckmateWhite = c.determineWeakCheckmate(head, true);
-      boolean weakCheckmateBlack = c.determineWeakCheckmate(head, false);
-      boolean realCheckmateWhite = c.determineRealCheckmate(head, true);
-      boolean realCheckmateBlack = c.determineRealCheckmate(head, false);
-
-      // print the initial board
-      System.out.println("Initial Board");
-      Utilities.convertFromListToMatrixAndPrint(head, board_no, board_size);
-      
-      //check if puzzle is valid
-      if(!ListOperations.checkValidity(head)){
-          System.out.println("No solution");
-          c.writeToAnalysisFile("No solution");
-          writer.newLine();
-      }
-      else{
-        //attempt checkmate in given moves
-        String output;
+  // Method to look a puzzle up in the solution cache
+  // Input: exact key and canonical key of the puzzle
+  // Output: returns the solution kept under the exact key, "No solution" if a mirror image has none, or null
+  private static String lookupCache(long key, long canonicalKey) {
+    String solution = cache.lookup(key);
+    if(solution == null) {
+      solution = cache.lookup(canonicalKey);
+      if(solution != null && !solution.equals("No solution")) {
+        solution = null;
+      }
+    }
+    return solution;
+  }
+
+  // Method to solve the current puzzle, answering it from the caches if an earlier puzzle or run solved it.
+  // A solution with a move is kept under the exact key of the puzzle, since a mirror image of the
+  // puzzle may find another move first. "No solution" holds for every mirror image, so it is also
+  // kept under the canonical key, where the mirror images find it
+  // Input: exact key and canonical key of the puzzle
+  // Output: returns the solution
+  public String solve(long key, long canonicalKey) throws IOException {
+    String solution = null;
+    if(results != null) {
+      solution = results.lookup(key, canonicalKey);
+    }
+    if(solution == null && cache != null) {
+      solution = lookupCache(key, canonicalKey);
+      if(solution != null && results != null) {
+        results.store(key, solution);
+      }
+    }
+    source = "cache";
+    if(solution == null) {
+      source = "search";
+      if(SearchStats.ENABLED) {
+        stats = new SearchStats(moves);
+      }
+      //attempt checkmate in given moves
+      String output;
+      nodes = 0;
+      deadline = System.nanoTime() + timeLimit*1000000L;
+      long start = System.nanoTime();
+      try {
         if(moves%2 ==1)
-            output = c.attemptCheckmateWhite(head,moves);
+            output = attemptCheckmateWhite(head,moves);
         else
-            output = c.attemptCheckmateBlack(head,moves);
-        System.out.println(output);
-        c.writeToAnalysisFile(output);
-        writer.newLine();
+            output = attemptCheckmateBlack(head,moves);
+      }
+      catch(SearchTimeoutException e) {
+        // nothing is known about this board, so the verdict is not cached
+        source = "timeout";
+        return "Unknown (" + e.getMessage() + " after " + nodes + " nodes and "
+               + (System.nanoTime() - start)/1000000 + " ms)";
       }
-      
-      for(int k = 0; k < 50; k++) {
-        System.out.print('-');
+      solution = output;
+      if(cache != null) {
+        cache.append(key, solution);
+        if(solution.equals("No solution")) {
+          cache.append(canonicalKey, solution);
+        }
       }
-      System.out.println();
+      if(results != null) {
+        results.store(key, solution);
+        if(solution.equals("No solution")) {
+          results.store(canonicalKey, solution);
+        }
+      }
+    }
+    return solution;
+  }
+
+  // Method to find out why the board cannot be solved
+  // besides what BoardValidator checks, black must not be in check,
+  // since white always makes the first move
+  // Input: none
+  // Output: returns null if the board is valid, or why it is not
+  public String invalidReason() {
+    String reason = BoardValidator.validate(head, board_size);
+    if(reason == null && determineCheck(head, false)) {
+      reason = "black is in check but white is to move";
+    }
+    return reason;
+  }
+
+  // Method to make the first move of the solution on the list when it was not searched here,
+  // so that the final board is printed the same way as after the search
+  // Input: none
+  // Output: void, sets finalBoard if there is a move
+  private void playFirstMove() {
+    if(firstMove != null) {
+      Node moved = ListOperations.findChessPiece(head, firstMove[1], firstMove[0]);
+      moved.setCol(firstMove[2]);
+      moved.setRow(firstMove[3]);
+      finalBoard = head;
+    }
+  }
+
+  // Validate stage of the pipeline
+  // checks the validity of the board and, if the renderer prints it, keeps a copy of it
+  // since the search moves the chesspieces of the list
+  // Input: none
+  // Output: void
+  public void validate() {
+    if(manifest != null && (output = manifest.lookup(contentHash)) != null) {
+      // the line did not change since the previous run, so its answer is taken as it is
+      source = "manifest";
+      firstMove = manifest.lookupMove(contentHash);
+    }
+    else {
+      isValid = !knownInvalid && invalidReason() == null;
+    }
+    if(renderer.showsBoards()) {
+      initialBoard = ListOperations.listCopy(head);
+    }
+  }
+
+  // Solve stage of the pipeline
+  // namely, attempt the checkmate, the search analyses each position it reaches
+  // Input: none
+  // Output: void, the answer is kept for the write stage
+  public void solvePuzzle() {
+    try {
+      solveBoard();
     }
     catch(Exception e) {
       Utilities.errExit("Error while performing operations");
     }
+  }
+
+  // Method that does the work of solvePuzzle, but hands a failure to the caller instead of stopping
+  // the program, so the solver server can answer the client and keep running
+  // Input: none
+  // Output: void, throws what the search ran into
+  public void solveBoard() throws Exception {
+    if(output != null) {
+      // answered from the manifest, which also kept the move for the final board
+      playFirstMove();
+      return;
+    }
+    //check if puzzle is valid
+    if(!isValid){
+      output = "No solution";
+      source = "invalid";
+      return;
+    }
+    if(checkpoint != null && (output = checkpoint.earlyAnswer(board_no)) != null) {
+      // solved by the run this one resumes, but not written before it stopped
+      source = "checkpoint";
+      return;
+    }
+    long start = System.nanoTime();
+    SolveEvent event = new SolveEvent();
+    event.begin();
+    // identical puzzles of the batch share one key and are solved once
+    long key = Symmetry.exactKey(head, moves, board_size);
+    long canonicalKey = Symmetry.puzzleKey(head, moves, Symmetry.canonicalTransform(head, board_size), board_size);
+    if(duplicates != null) {
+      Deduplicator.Solution solution = duplicates.solveOnce(key, () -> new Deduplicator.Solution(solve(key, canonicalKey), firstMove));
+      output = solution.output;
+      if(finalBoard == null) {
+        // another board searched this puzzle, so make its move here to print the same final board
+        firstMove = solution.move;
+        playFirstMove();
+      }
+    }
+    else {
+      output = solve(key, canonicalKey);
+    }
+    solveNanos = System.nanoTime() - start;
+    event.end();
+    if(event.shouldCommit()) {
+      event.board = board_no;
+      event.moves = moves;
+      event.verdict = output;
+      event.source = source;
+      event.nodes = nodes;
+      event.commit();
+    }
+    if(checkpoint != null) {
+      checkpoint.solved(board_no, output);
+    }
+  }
+
+  // Render stage of the pipeline
+  // hands the initial board, the board after the solution's move and the answer to the renderer
+  // Input: the renderer
+  // Output: void
+  public void render(Renderer renderer) {
+    renderer.render(board_no, board_size, initialBoard, finalBoard, output);
+  }
 
+  // Write stage of the pipeline
+  // Input: none
+  // Output: void, writes the answer as one line of solution.txt
+  public void write() {
+    try {
+      writeToAnalysisFile(output);
+      writer.newLine();
+      if(SearchStats.ENABLED) {
+        statsWriter.write(SearchStats.toJson(board_no, moves, output, source, solveNanos, stats));
+        statsWriter.newLine();
+      }
+      if(manifest != null && !source.equals("timeout")) {
+        manifest.record(contentHash, firstMove, output, source.equals("manifest"));
+      }
+      if(checkpoint != null) {
+        checkpoint.written(board_no, writer, statsWriter);
+      }
+    }
+    catch(IOException e) {
+      Utilities.errExit("Exception occurred while trying to write to file: write");
+    }
   }
 
   // main method
+  // Options:
+  //     --tt <MB>      keep a transposition table of the given size while solving
+  //     --tt-offheap   allocate the transposition table outside of the java heap
+  //     --cache <file> look puzzles up in (and add them to) a solution cache file
+  //     --result-cache <MB> keep the solutions of recent puzzles in memory, mostly for --serve
+  //     --tb <dir>     answer positions with few chesspieces from the tablebases in a directory
+  //     --binary <file> read the puzzles from a binary puzzle file instead of input.txt
+  //     --input <file> read the puzzles from another text file instead of input.txt
+  //     --output <file> write the answers to another file instead of solution.txt
+  //     --first-board <n> number the boards from n, for a shard of a bigger file (see ShardRunner)
+  //     --board-size <n> solve boards of n x n squares, up to 16, instead of 8 x 8
+  //     --checkpoint <s> save the progress of the batch every s seconds (see Checkpoint)
+  //     --resume       continue the batch from its checkpoint, appending to the solution and statistics files
+  //     --manifest <file> only solve the lines that changed since the run that wrote the manifest
+  //     --threads <n>  number of threads solving puzzles
+  //     --report <s>   report the pipeline stages on stderr every s seconds
+  //     --render <mode> console output: none, plain, ansi (default) or json
+  //     --node-limit <n> give up a board after searching n positions
+  //     --time-limit <ms> give up a board after searching for ms milliseconds
+  //     --serve <port|path> instead of input.txt, solve the lines sent to a loopback TCP port
+  //                    or a unix domain socket (see SolverServer)
   public static void main(String[] args) {
+    int tableSize = 0;
+    boolean offHeap = false;
+    String cacheFile = null;
+    String serveAddress = null;
+    int checkpointSeconds = 0;
+    boolean resume = false;
+    String manifestFile = null;
+    String tablebaseDir = null;
+    for(int i = 0; i < args.length; i++) {
+      if(args[i].equals("--tt") && i+1 < args.length) {
+        try {
+          tableSize = Integer.parseInt(args[++i]);
+        }
+        catch(NumberFormatException e) {
+          Utilities.errExit("Transposition table size must be an integer");
+        }
+      }
+      else if(args[i].equals("--tt-offheap")) {
+        offHeap = true;
+      }
+      else if(args[i].equals("--cache") && i+1 < args.length) {
+        cacheFile = args[++i];
+      }
+      else if(args[i].equals("--result-cache") && i+1 < args.length) {
+        try {
+          results = new ResultCache(Integer.parseInt(args[++i]));
+        }
+        catch(NumberFormatException e) {
+          Utilities.errExit("Result cache size must be an integer");
+        }
+      }
+      else if(args[i].equals("--tb") && i+1 < args.length) {
+        tablebaseDir = args[++i];
+        Tablebase.loadDirectory(tablebaseDir);
+      }
+      else if(args[i].equals("--binary") && i+1 < args.length) {
+        binaryInput = args[++i];
+      }
+      else if(args[i].equals("--input") && i+1 < args.length) {
+        inputFile = args[++i];
+      }
+      else if(args[i].equals("--output") && i+1 < args.length) {
+        outputFile = args[++i];
+      }
+      else if(args[i].equals("--first-board") && i+1 < args.length) {
+        try {
+          firstBoardNo = Integer.parseInt(args[++i]);
+        }
+        catch(NumberFormatException e) {
+          Utilities.errExit("First board number must be an integer");
+        }
+      }
+      else if(args[i].equals("--board-size") && i+1 < args.length) {
+        try {
+          setBoardSize(Integer.parseInt(args[++i]));
+        }
+        catch(NumberFormatException e) {
+          Utilities.errExit("Board size must be an integer");
+        }
+      }
+      else if(args[i].equals("--checkpoint") && i+1 < args.length) {
+        try {
+          checkpointSeconds = Integer.parseInt(args[++i]);
+        }
+        catch(NumberFormatException e) {
+          Utilities.errExit("Checkpoint interval must be an integer");
+        }
+      }
+      else if(args[i].equals("--resume")) {
+        resume = true;
+      }
+      else if(args[i].equals("--manifest") && i+1 < args.length) {
+        manifestFile = args[++i];
+      }
+      else if(args[i].equals("--threads") && i+1 < args.length) {
+        try {
+          solverThreads = Integer.parseInt(args[++i]);
+        }
+        catch(NumberFormatException e) {
+          Utilities.errExit("Number of threads must be an integer");
+        }
+      }
+      else if(args[i].equals("--node-limit") && i+1 < args.length) {
+        try {
+          nodeLimit = Long.parseLong(args[++i]);
+        }
+        catch(NumberFormatException e) {
+          Utilities.errExit("Node limit must be an integer");
+        }
+      }
+      else if(args[i].equals("--time-limit") && i+1 < args.length) {
+        try {
+          timeLimit = Long.parseLong(args[++i]);
+        }
+        catch(NumberFormatException e) {
+          Utilities.errExit("Time limit must be an integer");
+        }
+      }
+      else if(args[i].equals("--serve") && i+1 < args.length) {
+        serveAddress = args[++i];
+      }
+      else if(args[i].equals("--render") && i+1 < args.length) {
+        renderer = Renderer.create(args[++i]);
+      }
+      else if(args[i].equals("--report") && i+1 < args.length) {
+        try {
+          reportSeconds = Integer.parseInt(args[++i]);
+        }
+        catch(NumberFormatException e) {
+          Utilities.errExit("Report interval must be an integer");
+        }
+      }
+      else {
+        Utilities.errExit("Unknown option: " + args[i]);
+      }
+    }
+    if(tableSize > 0) {
+      table = new TranspositionTable(tableSize, offHeap);
+    }
+
+    if(cacheFile != null) {
+      try {
+        cache = new SolutionCache(cacheFile);
+      }
+      catch(IOException e) {
+        Utilities.errExit("Cannot open solution cache " + cacheFile);
+      }
+    }
+
+    if(serveAddress != null) {
+      // the server runs until it is killed, with the table and cache kept warm between clients,
+      // and its boards are not printed
+      renderer = new Renderer();
+      new SolverServer(serveAddress).run();
+      return;
+    }
+
+    if(manifestFile != null) {
+      try {
+        // the answers of a manifest only hold for the options that can change them
+        String options = "board-size " + boardSize + " tb " + tablebaseDir + " node-limit " + nodeLimit + " time-limit " + timeLimit;
+        manifest = new Manifest(manifestFile, options);
+      }
+      catch(IOException e) {
+        Utilities.errExit("Cannot open manifest: " + e.getMessage());
+      }
+    }
+
+    boolean append = false;
+    if(checkpointSeconds > 0 || resume) {
+      checkpoint = new Checkpoint(outputFile, SearchStats.FILE, (checkpointSeconds > 0) ? checkpointSeconds : 60, firstBoardNo);
+      try {
+        // without a checkpoint there is nothing to resume, and the batch starts from the first board
+        if(resume && checkpoint.load()) {
+          checkpoint.truncateOutput();
+          append = true;
+        }
+      }
+      catch(IOException e) {
+        Utilities.errExit("Cannot resume: " + e.getMessage());
+      }
+    }
+
     try{
-      writer = new BufferedWriter(new FileWriter("solution.txt")); // open the file to write
+      writer = new BufferedWriter(new FileWriter(outputFile, append)); // open the file to write
+      if(SearchStats.ENABLED) {
+        statsWriter = new BufferedWriter(new FileWriter(SearchStats.FILE, append && checkpoint.keepsStats()));
+      }
       readFromInputFile(); // read from input file and perform operations
       writer.close(); // close the writer
+      if(statsWriter != null) {
+        statsWriter.close();
+      }
+      if(results != null) {
+        System.err.println(results.describe());
+      }
+      if(manifest != null) {
+        manifest.close();
+        System.err.println(manifest.describe());
+      }
+      if(cache != null) {
+        cache.close();
+      }
     }
     catch(Exception e) {
       Utilities.errExit("Error while creating BufferedWriter");
     }
+    // the batch is done, so give the table memory back
+    if(table != null) {
+      table.release();
+      table = null;
+    }
 
   }
 }
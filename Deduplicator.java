@@ -0,0 +1,67 @@
+// Filename: Deduplicator.java
+//
+// Contains class Deduplicator that makes sure every distinct puzzle of a batch is solved only once
+//
+// The first worker that asks for a key registers a future for it and solves the puzzle. Every later
+// request for the same key that arrives while the first worker is still searching waits on that
+// future and gets the same solution. Once the puzzle is solved the future is dropped and only its
+// Solution is kept for the rest of the batch: the answer and the first move, which is all a later
+// board needs to print the same answer and the same final board without holding on to the first one.
+//
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+class Deduplicator {
+
+  // answer of a puzzle and the first move of the search, {col, row, destCol, destRow}, or null if
+  // the answer did not come with a move
+  public static class Solution {
+    String output;
+    int[] move;
+
+    public Solution(String output, int[] move) {
+      this.output = output;
+      this.move = move;
+    }
+  }
+
+  private ConcurrentHashMap<Long, Solution> solved = new ConcurrentHashMap<Long, Solution>(); // puzzles of the batch solved so far
+  private ConcurrentHashMap<Long, CompletableFuture<Solution>> solving = new ConcurrentHashMap<Long, CompletableFuture<Solution>>(); // puzzles being searched
+
+  // Method to return the solution for a key, solving it only if nobody else has done so
+  // Input: key of the puzzle and the solver to call if it is new
+  // Output: returns the solution
+  public Solution solveOnce(long key, Callable<Solution> solver) throws Exception {
+    Solution solution = solved.get(key);
+    if(solution != null) {
+      return solution;
+    }
+    CompletableFuture<Solution> mine = new CompletableFuture<Solution>();
+    CompletableFuture<Solution> existing = solving.putIfAbsent(key, mine);
+    if(existing != null) {
+      return existing.get();
+    }
+    try {
+      // the worker before us may have finished between the two lookups
+      solution = solved.get(key);
+      if(solution == null) {
+        solution = solver.call();
+        solved.put(key, solution);
+      }
+      mine.complete(solution);
+      return solution;
+    }
+    catch(Exception e) {
+      // the next request tries again instead of getting our failure
+      mine.completeExceptionally(e);
+      throw e;
+    }
+    finally {
+      solving.remove(key, mine);
+    }
+  }
+}
+
+// End
@@ -0,0 +1,60 @@
+// Filename: JsonRenderer.java
+//
+// Contains the class JsonRenderer that prints one JSON object per board and line, for tools that
+// read the console output. For example:
+//     {"board":2,"solution":"q 1 7 7 7","initial":["--------",...],"final":["--------",...]}
+// A board is an array of its rows from row board_size down to row 1, one character per col, '-' for
+// an empty square. "final" is null when the search did not move anything.
+//
+// This needs to be compiled with Renderer.java, Node.java and Utilities.java.
+//
+
+class JsonRenderer extends Renderer {
+
+  // return whether the renderer prints the boards
+  public boolean showsBoards() {
+    return true;
+  }
+
+  // Method to render one solved board as a JSON line
+  // Input: board number, board size, the two boards and the answer
+  // Output: void
+  public void render(int board_no, int board_size, Node initialBoard, Node finalBoard, String output) {
+    buffer.append("{\"board\":").append(board_no).append(",\"solution\":\"");
+    for(int i = 0; i < output.length(); i++) {
+      char c = output.charAt(i);
+      if(c == '"' || c == '\\') {
+        buffer.append('\\');
+      }
+      buffer.append(c);
+    }
+    buffer.append("\",\"initial\":");
+    appendBoard(initialBoard, board_size);
+    buffer.append(",\"final\":");
+    if(finalBoard != null) {
+      appendBoard(finalBoard, board_size);
+    }
+    else {
+      buffer.append("null");
+    }
+    buffer.append("}\n");
+  }
+
+  // Method to append a board as an array of rows
+  // Input: list and board size
+  // Output: void
+  private void appendBoard(Node list, int board_size) {
+    fill(list, board_size);
+    buffer.append('[');
+    for(int i = board_size; i > 0; i--) {
+      buffer.append('"');
+      for(int j = 1; j <= board_size; j++) {
+        buffer.append(isFilled[i][j] == 0 ? '-' : isFilled[i][j]);
+      }
+      buffer.append(i > 1 ? "\"," : "\"");
+    }
+    buffer.append(']');
+  }
+}
+
+// End
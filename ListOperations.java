@@ -112,52 +112,14 @@ class ListOperations {
     return pieceCtr;
   }
 
-  // Method to count the number of chesspieces on a single location
-  // This method will helps us check the validity case
-  // Input: integer row and column and the list
-  // Output: returns the count
-  public static int countPiecesInLocation(Node head, int row, int col) {
-    Node piece = head.getNext();
-    int pieceCtr = 0;
-    // loop through to check if any two pieces overlap
-    while(piece != null) {
-      if(piece.getRow() == row && piece.getCol() == col) {
-        pieceCtr++;
-      }
-      piece = piece.getNext();
-    }
-    return pieceCtr;
-  }
-
-  // Method to check if two pieces occupy the same place
-  // This method utilizes the countPiecesInLocation method to see
-  // if there are more than two pieces in a single location
-  // Input: list
-  // Output: returns true if two pieces occupy same position
-  public static boolean twoPiecesOccupySamePosition(Node head) {
-    Node piece = head.getNext();
-    // loop through and see if any of the pieces overlap
-    while(piece != null) {
-      if(countPiecesInLocation(head, piece.getRow(), piece.getCol()) > 1) {
-        return true;
-      }
-      piece = piece.getNext();
-    }
-    return false;
-  }
-
   // Method to check validity
-  // basically looks if there are not two chesspieces in the same location and
-  // one each colored king is present
-  // Input: list
+  // basically looks if there are not two chesspieces in the same location,
+  // one each colored king is present and the rest of the material is possible,
+  // in a single pass over the list (see BoardValidator)
+  // Input: list and board size
   // Output: returns if it is valid or not
-  public static boolean checkValidity(Node head) {
-    if(!twoPiecesOccupySamePosition(head) && countPiecesOfType(head, 'k') == 1 && countPiecesOfType(head, 'K') == 1) {
-      return true;
-    }
-    else {
-      return false;
-    }
+  public static boolean checkValidity(Node head, int board_size) {
+    return BoardValidator.validate(head, board_size) == null;
   }
 }
 
@@ -0,0 +1,93 @@
+// Filename: Mailbox.java
+//
+// Contains class Mailbox that lays a position out as a padded array of squares, so that walking off
+// the edge of the board is found by reading the square instead of comparing the row and col
+//
+// The board is surrounded by sentinel squares (OFF_BOARD): one col on each side and two rows above and
+// below, which for an 8x8 board is the classic 10x12 layout. Square (row, col) is at index
+// (row+1)*width + col with width = board_size+2, so a step of a row is width and a step of a col is 1.
+// A king step or a ray that starts on the board therefore reaches a sentinel before it can leave the
+// array, and a step off the left or right edge lands on the padding col of the row next to it (the
+// second padding row keeps room for knight jumps, like the 10x12 layout). The squares only hold the
+// color of the chesspiece on them, and the empty padded board of each size is made once and copied.
+//
+// This needs to be compiled with ChessPuzzle.java, Node.java and Zobrist.java.
+//
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+class Mailbox {
+
+  public static final byte OFF_BOARD = -1; // sentinel square around the board
+  public static final byte EMPTY = 0;
+  public static final byte WHITE = 1; // square of a white chesspiece
+  public static final byte BLACK = 2; // square of a black chesspiece
+  // empty padded board of each size, made the first time the size is used
+  private static final AtomicReferenceArray<byte[]> emptyBoards = new AtomicReferenceArray<byte[]>(Zobrist.MAX_BOARD_SIZE + 1);
+
+  private int width; // squares per padded row
+  private byte[] squares; // the padded board
+
+  // constructor
+  // Input: list of the position and the board size
+  public Mailbox(Node list, int board_size) {
+    width = board_size + 2;
+    squares = emptyBoard(board_size).clone();
+    for(Node piece = list.getNext(); piece != null; piece = piece.getNext()) {
+      int row = piece.getRow();
+      int col = piece.getCol();
+      if(row >= 1 && col >= 1 && row <= board_size && col <= board_size) {
+        squares[index(row, col)] = piece.getColor() ? WHITE : BLACK;
+      }
+    }
+  }
+
+  // Method to return the empty padded board of a size, every square outside the board is OFF_BOARD
+  // Input: board size
+  // Output: returns the shared board, which must not be changed
+  private static byte[] emptyBoard(int board_size) {
+    byte[] board = emptyBoards.get(board_size);
+    if(board == null) {
+      int width = board_size + 2;
+      board = new byte[width * (board_size + 4)];
+      Arrays.fill(board, OFF_BOARD);
+      for(int row = 1; row <= board_size; row++) {
+        for(int col = 1; col <= board_size; col++) {
+          board[(row+1)*width + col] = EMPTY;
+        }
+      }
+      emptyBoards.compareAndSet(board_size, null, board);
+      board = emptyBoards.get(board_size);
+    }
+    return board;
+  }
+
+  // Input: row and col on the board
+  // Output: returns the index of the square
+  public int index(int row, int col) {
+    return (row+1)*width + col;
+  }
+
+  // Input: row and col of a square on the board and the number of a king step
+  // Output: returns if the king step from the square stays on the board
+  public boolean isStepOnBoard(int row, int col, int step) {
+    return squares[index(row, col) + ChessPuzzle.possibleRowMoves[step]*width + ChessPuzzle.possibleColMoves[step]] != OFF_BOARD;
+  }
+
+  // Method to walk the squares from one square towards another on the same row, col or diagonal,
+  // which is what ChessPuzzle.checkBlock does with the squares getMoves lists. The walk needs no
+  // bounds check, since a ray that misses the other square ends on a sentinel
+  // Input: row and col of the square to start from and of the square to reach
+  // Output: returns if the first chesspiece on the way is on the square to reach
+  public boolean isRayClear(int fromRow, int fromCol, int toRow, int toCol) {
+    int step = Integer.signum(toRow - fromRow)*width + Integer.signum(toCol - fromCol);
+    int to = index(fromRow, fromCol) + step;
+    while(squares[to] == EMPTY) {
+      to += step;
+    }
+    return to == index(toRow, toCol);
+  }
+}
+
+// End
@@ -0,0 +1,172 @@
+// Filename: Manifest.java
+//
+// Contains class Manifest that remembers the answer of every line of a puzzle file, so that after a
+// few lines of a big file were edited only those lines are searched again
+//
+// Every line is known by a 64 bit FNV-1a hash of its bytes (without the spaces around it), or of its
+// record for a binary puzzle file. The manifest file is a line "manifest 2 <options>" followed by one
+// line "<hash in hex> <move> <answer>" per board, where the options are those that change the answers
+// (board size, tablebases and search limits) and the move is the first move of the search as
+// "col,row,destCol,destRow", or "-" if the answer did not come with one. A manifest written with other
+// options, or by a version without the moves, is not used, since its answers may not hold anymore. A run reads the manifest of the previous run, answers every
+// line whose hash it finds there without validating or searching it (making the move again, so the
+// final board is printed like after a search), and writes the new manifest
+// next to it while the answers are written. Lines that gave up on a limit are left out, so they are
+// tried again. Only when the batch is complete is the new manifest renamed over the old one, so a run
+// that dies keeps the old manifest. Unlike the solution cache, nothing is kept for lines that were
+// removed from the file, and the answers come back exactly as they were written.
+//
+// This needs to be compiled with Utilities.java.
+//
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+
+class Manifest {
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  private static final String HEADER = "manifest 2"; // first word of the file and the version of its lines
+
+  private String fileName; // the manifest file
+  private HashMap<Long, String> previous = new HashMap<Long, String>(); // move and answer of every line of the previous run
+  private BufferedWriter next; // the manifest of this run, renamed over the old one by close
+  private long reused; // boards answered from the previous run
+  private long solved; // boards that had to be solved
+
+  // constructor, reads the manifest of the previous run if there is one and it has the same options
+  // Input: name of the manifest file and the options that change the answers
+  public Manifest(String fileName, String options) throws IOException {
+    this.fileName = fileName;
+    File file = new File(fileName);
+    if(file.exists()) {
+      BufferedReader in = new BufferedReader(new FileReader(file));
+      try {
+        String line = in.readLine();
+        if(line == null || !(line.equals("manifest") || line.startsWith("manifest "))) {
+          throw new IOException("Not a manifest file: " + fileName);
+        }
+        // a manifest written with other options is left alone and replaced at the end of this run
+        if(line.equals(HEADER + " " + options)) {
+          while((line = in.readLine()) != null) {
+            int space = line.indexOf(' ');
+            String entry = line.substring(space + 1);
+            if(space < 0 || entry.indexOf(' ') < 0) {
+              throw new IOException("Broken manifest file: " + fileName);
+            }
+            parseMove(entry); // throws for a broken move
+            previous.put(Long.parseUnsignedLong(line.substring(0, space), 16), entry);
+          }
+        }
+      }
+      catch(IndexOutOfBoundsException | NumberFormatException e) {
+        throw new IOException("Broken manifest file: " + fileName);
+      }
+      finally {
+        in.close();
+      }
+    }
+    next = new BufferedWriter(new FileWriter(fileName + ".tmp"));
+    next.write(HEADER + " " + options);
+    next.newLine();
+  }
+
+  // Method to hash the bytes of a line or a record
+  // Input: buffer and the range of bytes
+  // Output: returns the 64 bit FNV-1a hash of the bytes
+  public static long hash(ByteBuffer buffer, int start, int end) {
+    long hash = FNV_OFFSET;
+    for(int i = start; i < end; i++) {
+      hash = (hash ^ (buffer.get(i) & 0xff)) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  // Input: hash of a line
+  // Output: returns the answer the previous run wrote for the line, or null if it is new or changed
+  public String lookup(long hash) {
+    String entry = previous.get(hash);
+    if(entry == null) {
+      return null;
+    }
+    return entry.substring(entry.indexOf(' ') + 1);
+  }
+
+  // Input: hash of a line
+  // Output: returns the first move the previous run made for the line, {col, row, destCol, destRow},
+  // or null if it made none or the line is new or changed
+  public int[] lookupMove(long hash) {
+    String entry = previous.get(hash);
+    if(entry == null) {
+      return null;
+    }
+    return parseMove(entry);
+  }
+
+  // Input: entry of a line, the move followed by the answer
+  // Output: returns the move, or null for "-", throws NumberFormatException or
+  // IndexOutOfBoundsException if it is broken
+  private static int[] parseMove(String entry) {
+    String text = entry.substring(0, entry.indexOf(' '));
+    if(text.equals("-")) {
+      return null;
+    }
+    String[] squares = text.split(",");
+    int[] move = new int[4];
+    for(int i = 0; i < move.length; i++) {
+      move[i] = Integer.parseInt(squares[i]);
+    }
+    return move;
+  }
+
+  // Method to add the answer of a line to the manifest of this run, called in board order by the
+  // write stage, and by the reader for the lines a resumed run skips
+  // Input: hash of the line, its first move (or null), its answer and if it came from the previous run
+  // Output: void
+  public synchronized void record(long hash, int[] move, String answer, boolean reusedAnswer) throws IOException {
+    next.write(Long.toHexString(hash));
+    next.write(' ');
+    next.write(move == null ? "-" : move[0] + "," + move[1] + "," + move[2] + "," + move[3]);
+    next.write(' ');
+    next.write(answer);
+    next.newLine();
+    if(reusedAnswer) {
+      reused++;
+    }
+    else {
+      solved++;
+    }
+  }
+
+  // Method to keep the entry of a line that this run does not write, if the previous run had one
+  // Input: hash of the line
+  // Output: void
+  public void keep(long hash) throws IOException {
+    String answer = lookup(hash);
+    if(answer != null) {
+      record(hash, lookupMove(hash), answer, true);
+    }
+  }
+
+  // Method to finish the manifest of this run and put it in place of the old one
+  // Input: none
+  // Output: void
+  public synchronized void close() throws IOException {
+    next.close();
+    Files.move(Paths.get(fileName + ".tmp"), Paths.get(fileName), StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  // Method to describe how much of the batch the manifest saved
+  // Input: none
+  // Output: returns the number of reused and solved boards
+  public synchronized String describe() {
+    return "Manifest " + fileName + ": " + reused + " boards reused, " + solved + " solved";
+  }
+}
+
+// End
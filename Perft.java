@@ -0,0 +1,206 @@
+// Filename: Perft.java
+//
+// Contains class Perft that counts the move sequences of a position to a given depth
+//
+// Perft walks every valid move the search would try, with exactly the same move generator (every
+// chesspiece of the side to move, towards every square of Position.targets, checked by
+// Position.makeValidMove), and
+// counts the positions at the last ply. Comparing the counts with ones worked out by hand or by
+// another program finds rule bugs in the generator, and the time it takes measures its raw speed.
+// The rules are the ones of this solver: no castling, no en passant and no promotion, and no side
+// may move while the other one is in check.
+//
+// Each line of the file is a position in the input.txt format, where the first number is the depth.
+// White moves first unless --black is given. The moves of the root are split over the threads.
+// Lines that the solver would reject (see ChessPuzzle.invalidReason, with the sides swapped for
+// --black) are not counted, and their reason is printed instead.
+//
+// Usage: java Perft [--divide] [--threads <n>] [--black] [--board-size <n>] <file>
+//     --divide  print the count below each move of the root
+//
+// This needs to be compiled with ChessPuzzle.java, BoardValidator.java, Position.java, Bitboard.java, Puzzle.java, PuzzleReader.java, Node.java, ListOperations.java and Utilities.java.
+//
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class Perft {
+
+  private ChessPuzzle puzzle; // for the move methods and the board size
+  private long positions; // positions visited, the root and the leaves included
+
+  // a valid move and the list after it
+  public static class Move {
+    int[] squares; // {col, row, destCol, destRow}
+    Node list;
+
+    public Move(int[] squares, Node list) {
+      this.squares = squares;
+      this.list = list;
+    }
+  }
+
+  // constructor
+  // Input: board size
+  public Perft(int board_size) {
+    this.puzzle = new ChessPuzzle(0, 0, board_size);
+  }
+
+  // Method to list the valid moves of a side the way the search finds them
+  // Input: list and the side to move
+  // Output: returns the moves in the order the search tries them
+  public ArrayList<Move> moves(Node list, boolean color) {
+    ArrayList<Move> moves = new ArrayList<Move>();
+    Position position = new Position(puzzle, list);
+    int board_size = puzzle.getBoardSize();
+    for(Node current = list.getNext(); current != null; current = current.getNext()) {
+      if(current.getColor() != color) {
+        continue;
+      }
+      Bitboard targets = position.targets(current);
+      for(int square = targets.next(0); square >= 0; square = targets.next(square+1)) {
+        Node copy = ListOperations.listCopy(list);
+        int[] move = {current.getCol(), current.getRow(), Bitboard.col(square, board_size), Bitboard.row(square, board_size)};
+        if(position.makeValidMove(copy, move)) {
+          moves.add(new Move(move, copy));
+        }
+      }
+    }
+    return moves;
+  }
+
+  // Method to count the positions at the given depth below a position
+  // Input: list, side to move and depth
+  // Output: returns the number of positions at that depth
+  public long perft(Node list, boolean color, int depth) {
+    positions++;
+    if(depth == 0) {
+      return 1;
+    }
+    long count = 0;
+    for(Move move : moves(list, color)) {
+      count += perft(move.list, !color, depth-1);
+    }
+    return count;
+  }
+
+  // Method to check a position the way ChessPuzzle.invalidReason does, for either side to move
+  // Input: list and the side to move
+  // Output: returns why the solver would reject the position, or null if it is valid
+  public String invalidReason(Node list, boolean color) {
+    String reason = BoardValidator.validate(list, puzzle.getBoardSize());
+    if(reason == null && puzzle.determineCheck(list, !color)) {
+      reason = (color ? "black" : "white") + " is in check but " + (color ? "white" : "black") + " is to move";
+    }
+    return reason;
+  }
+
+  // Method to run perft on one position, splitting the moves of the root over the threads
+  // Input: the puzzle, side to move, number of threads and whether to print the count of each root move
+  // Output: void, prints the result
+  public static void run(Puzzle input, boolean color, int threads, boolean divide) throws Exception {
+    int depth = input.getMoves();
+    Node list = input.toList(new Node());
+    String reason = input.isInvalid() ? "negative col or row" : new Perft(ChessPuzzle.boardSize).invalidReason(list, color);
+    if(reason != null) {
+      System.out.println("Board " + input.getBoardNo() + " is invalid: " + reason);
+      return;
+    }
+    long start = System.nanoTime();
+    long count = 0;
+    long positions = 1;
+    if(depth == 0) {
+      count = 1;
+    }
+    else {
+      ArrayList<Move> rootMoves = new Perft(ChessPuzzle.boardSize).moves(list, color);
+      ExecutorService pool = Executors.newFixedThreadPool(threads);
+      ArrayList<Future<long[]>> results = new ArrayList<Future<long[]>>();
+      for(Move move : rootMoves) {
+        results.add(pool.submit(() -> {
+          Perft perft = new Perft(ChessPuzzle.boardSize);
+          long below = perft.perft(move.list, !color, depth-1);
+          return new long[] {below, perft.positions};
+        }));
+      }
+      for(int i = 0; i < rootMoves.size(); i++) {
+        long[] result = results.get(i).get();
+        count += result[0];
+        positions += result[1];
+        if(divide) {
+          int[] move = rootMoves.get(i).squares;
+          Node piece = ListOperations.findChessPiece(list, move[1], move[0]);
+          System.out.println(Utilities.returnChessPieceType(piece) + " " + move[0] + " " + move[1] + " "
+                             + move[2] + " " + move[3] + ": " + result[0]);
+        }
+      }
+      pool.shutdown();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.println(String.format("Board %d depth %d: %d nodes, %d positions visited, %.3f s, %.0f nodes/s",
+                                     input.getBoardNo(), depth, count, positions, seconds, count / Math.max(seconds, 1e-9)));
+  }
+
+  // main method
+  public static void main(String[] args) {
+    boolean divide = false;
+    boolean color = true;
+    int threads = Runtime.getRuntime().availableProcessors();
+    String fileName = null;
+    for(int i = 0; i < args.length; i++) {
+      if(args[i].equals("--divide")) {
+        divide = true;
+      }
+      else if(args[i].equals("--black")) {
+        color = false;
+      }
+      else if(args[i].equals("--threads") && i+1 < args.length) {
+        try {
+          threads = Integer.parseInt(args[++i]);
+        }
+        catch(NumberFormatException e) {
+          Utilities.errExit("Number of threads must be an integer");
+        }
+      }
+      else if(args[i].equals("--board-size") && i+1 < args.length) {
+        try {
+          ChessPuzzle.setBoardSize(Integer.parseInt(args[++i]));
+        }
+        catch(NumberFormatException e) {
+          Utilities.errExit("Board size must be an integer");
+        }
+      }
+      else if(fileName == null) {
+        fileName = args[i];
+      }
+      else {
+        Utilities.errExit("Usage: java Perft [--divide] [--threads <n>] [--black] [--board-size <n>] <file>");
+      }
+    }
+    if(fileName == null) {
+      Utilities.errExit("Usage: java Perft [--divide] [--threads <n>] [--black] [--board-size <n>] <file>");
+    }
+    ChessPuzzle.renderer = new Renderer();
+    try {
+      PuzzleReader reader = new PuzzleReader(fileName, 1);
+      ArrayList<Puzzle> puzzles;
+      while(!(puzzles = reader.readBatch()).isEmpty()) {
+        for(Puzzle puzzle : puzzles) {
+          run(puzzle, color, threads, divide);
+        }
+      }
+      reader.close();
+    }
+    catch(IOException e) {
+      Utilities.errExit("Exception occurred trying to read file");
+    }
+    catch(Exception e) {
+      Utilities.errExit("Error while counting moves: " + e);
+    }
+  }
+}
+
+// End
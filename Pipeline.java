@@ -0,0 +1,151 @@
+// Filename: Pipeline.java
+//
+// Contains class Pipeline that solves a batch of puzzles in stages
+//
+//     validate -> solve -> render -> write
+//
+// The caller parses the puzzles and submits them in board order. Validating, rendering and writing
+// each run on one thread, solving runs on as many threads as asked for. Solved puzzles can finish
+// out of order, so the render stage holds them back until every earlier board is done, and the
+// console and solution.txt see the boards in their original order. The queues between the stages
+// are bounded, which keeps a slow console or disk from filling up the memory, and a solver does not
+// start a board that is QUEUE_CAPACITY or more boards ahead of the next one to print, so a slow board
+// cannot make the render stage hold back more than that many. When asked for, the
+// stages are reported on stderr every few seconds and once more at the end. The render stage
+// collects the boards in the buffer of the Renderer and flushes it to the console at the end of
+// the batch.
+//
+// This needs to be compiled with PipelineStage.java, Renderer.java, ChessPuzzle.java and Utilities.java.
+//
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+class Pipeline {
+
+  private static final int QUEUE_CAPACITY = 256; // puzzles each stage can have waiting
+
+  private ArrayList<PipelineStage> stages = new ArrayList<PipelineStage>();
+  private HashMap<Integer, ChessPuzzle> waiting = new HashMap<Integer, ChessPuzzle>(); // solved boards that came early
+  private int nextBoardNo; // next board the render stage may print, changed while holding window
+  private final Object window = new Object(); // solvers wait on it for the render stage to catch up
+  private long startTime; // when the pipeline started, for the report
+  private int reportSeconds; // seconds between reports, 0 for only the final one
+  private Thread reporter;
+
+  // constructor
+  // Input: number of solver threads, board number of the first puzzle, seconds between reports and
+  // the renderer for the console
+  public Pipeline(int solverThreads, int firstBoardNo, int reportSeconds, Renderer renderer) {
+    this.nextBoardNo = firstBoardNo;
+    this.reportSeconds = reportSeconds;
+    stages.add(new PipelineStage("validate", 1, QUEUE_CAPACITY, (stage, c) -> {
+      c.validate();
+      stage.emit(c);
+    }));
+    stages.add(new PipelineStage("solve", solverThreads, QUEUE_CAPACITY, (stage, c) -> {
+      awaitWindow(c.getBoardNo());
+      c.solvePuzzle();
+      stage.emit(c);
+    }));
+    PipelineStage render = new PipelineStage("render", 1, QUEUE_CAPACITY, (stage, c) -> {
+      // print the boards in order, keeping back the ones that finished early
+      waiting.put(c.getBoardNo(), c);
+      while((c = waiting.remove(nextBoardNo)) != null) {
+        c.render(renderer);
+        stage.emit(c);
+        synchronized(window) {
+          nextBoardNo++;
+          window.notifyAll();
+        }
+      }
+      renderer.flushIfFull();
+    });
+    render.setEndOfBatch(renderer::flush);
+    stages.add(render);
+    stages.add(new PipelineStage("write", 1, QUEUE_CAPACITY, (stage, c) -> {
+      c.write();
+    }));
+    for(int i = 0; i+1 < stages.size(); i++) {
+      stages.get(i).setNext(stages.get(i+1));
+    }
+  }
+
+  // Method to hold a solver back while its board is too far ahead of the render stage. The boards
+  // before it were all taken from the queue earlier and are being solved or already printed, so
+  // the render stage always catches up
+  // Input: board number
+  // Output: void
+  private void awaitWindow(int boardNo) {
+    synchronized(window) {
+      while(boardNo - nextBoardNo >= QUEUE_CAPACITY) {
+        try {
+          window.wait();
+        }
+        catch(InterruptedException e) {
+          Utilities.errExit("Pipeline stage solve was interrupted");
+        }
+      }
+    }
+  }
+
+  // Method to start all the stages
+  // Input: none
+  // Output: void
+  public void start() {
+    startTime = System.nanoTime();
+    for(PipelineStage stage : stages) {
+      stage.start();
+    }
+    if(reportSeconds > 0) {
+      reporter = new Thread(() -> {
+        try {
+          while(true) {
+            Thread.sleep(reportSeconds * 1000L);
+            System.err.print(report());
+          }
+        }
+        catch(InterruptedException e) {
+          // the batch is done
+        }
+      }, "pipeline-report");
+      reporter.setDaemon(true);
+      reporter.start();
+    }
+  }
+
+  // Method to add a parsed puzzle to the pipeline, waiting while the first queue is full
+  // Input: puzzle
+  // Output: void
+  public void submit(ChessPuzzle c) throws InterruptedException {
+    stages.get(0).submit(c);
+  }
+
+  // Method to tell the stages that there are no more puzzles and wait until they are all written
+  // Input: none
+  // Output: void
+  public void finish() throws InterruptedException {
+    stages.get(0).submit(ChessPuzzle.END_OF_BATCH);
+    for(PipelineStage stage : stages) {
+      stage.join();
+    }
+    if(reporter != null) {
+      reporter.interrupt();
+      System.err.print(report());
+    }
+  }
+
+  // Method to describe every stage
+  // Input: none
+  // Output: returns one line per stage
+  public String report() {
+    double seconds = (System.nanoTime() - startTime) / 1e9;
+    String report = "";
+    for(PipelineStage stage : stages) {
+      report += stage.describe(seconds) + "\n";
+    }
+    return report;
+  }
+}
+
+// End
@@ -0,0 +1,139 @@
+// Filename: PipelineStage.java
+//
+// Contains class PipelineStage that runs one step of the solving pipeline on its own threads
+//
+// A stage takes puzzles from its input queue, does its work on them and hands them to the next stage
+// through that stage's queue. The queues are bounded, so a stage that falls behind makes the stages
+// before it wait instead of piling up puzzles in memory. When a stage sees ChessPuzzle.END_OF_BATCH,
+// the last of its threads to stop passes the marker on.
+//
+// This needs to be compiled with ChessPuzzle.java and Utilities.java.
+//
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+class PipelineStage {
+
+  private String name; // name used in the report
+  private int threads; // number of threads working on this stage
+  private ArrayBlockingQueue<ChessPuzzle> input; // puzzles waiting for this stage
+  private PipelineStage next; // stage that gets the puzzles afterwards, null for the last one
+  private BiConsumer<PipelineStage, ChessPuzzle> work; // the work, which passes puzzles on with emit
+  private Runnable endOfBatch; // run once all the puzzles of a batch went through this stage, may be null
+  private Thread[] workers;
+  private AtomicInteger running = new AtomicInteger(); // threads that have not seen the end marker yet
+  private AtomicLong processed = new AtomicLong(); // puzzles done by this stage
+  private AtomicLong busyNanos = new AtomicLong(); // time spent working, summed over the threads
+
+  // constructor
+  // Input: name, number of threads, size of the input queue and the work to do for each puzzle
+  public PipelineStage(String name, int threads, int capacity, BiConsumer<PipelineStage, ChessPuzzle> work) {
+    this.name = name;
+    this.threads = threads;
+    this.input = new ArrayBlockingQueue<ChessPuzzle>(capacity);
+    this.work = work;
+  }
+
+  // set the stage that gets the puzzles after this one
+  public void setNext(PipelineStage next) {
+    this.next = next;
+  }
+
+  // set what to do once all the puzzles of a batch went through this stage
+  public void setEndOfBatch(Runnable endOfBatch) {
+    this.endOfBatch = endOfBatch;
+  }
+
+  // Method to start the threads of the stage
+  // Input: none
+  // Output: void
+  public void start() {
+    workers = new Thread[threads];
+    running.set(threads);
+    for(int i = 0; i < threads; i++) {
+      workers[i] = new Thread(this::runWorker, name + "-" + i);
+      workers[i].start();
+    }
+  }
+
+  // Method that each thread of the stage runs until the end marker arrives
+  // Input: none
+  // Output: void
+  private void runWorker() {
+    try {
+      while(true) {
+        ChessPuzzle puzzle = input.take();
+        if(puzzle == ChessPuzzle.END_OF_BATCH) {
+          if(running.decrementAndGet() == 0) {
+            if(endOfBatch != null) {
+              endOfBatch.run();
+            }
+            emit(ChessPuzzle.END_OF_BATCH);
+          }
+          else {
+            // leave the marker for the other threads of this stage
+            input.put(puzzle);
+          }
+          return;
+        }
+        long start = System.nanoTime();
+        work.accept(this, puzzle);
+        busyNanos.addAndGet(System.nanoTime() - start);
+        processed.incrementAndGet();
+      }
+    }
+    catch(InterruptedException e) {
+      Utilities.errExit("Pipeline stage " + name + " was interrupted");
+    }
+    catch(RuntimeException e) {
+      // the other stages would wait for this puzzle forever, so stop like the solver did before the pipeline
+      Utilities.errExit("Error while performing operations");
+    }
+  }
+
+  // Method to put a puzzle into the input queue, waiting while the queue is full
+  // Input: puzzle
+  // Output: void
+  public void submit(ChessPuzzle puzzle) throws InterruptedException {
+    input.put(puzzle);
+  }
+
+  // Method to hand a puzzle to the next stage, waiting while its queue is full
+  // Input: puzzle
+  // Output: void
+  public void emit(ChessPuzzle puzzle) {
+    if(next != null) {
+      try {
+        next.submit(puzzle);
+      }
+      catch(InterruptedException e) {
+        Utilities.errExit("Pipeline stage " + name + " was interrupted");
+      }
+    }
+  }
+
+  // Method to wait until all the threads of the stage are done
+  // Input: none
+  // Output: void
+  public void join() throws InterruptedException {
+    for(int i = 0; i < workers.length; i++) {
+      workers[i].join();
+    }
+  }
+
+  // Method to describe the stage for the report
+  // Input: seconds since the pipeline started
+  // Output: returns puzzles done, throughput, how busy the threads were and the queue depth
+  public String describe(double seconds) {
+    long done = processed.get();
+    return String.format("%-8s threads %3d  done %10d  %10.1f/s  busy %5.1f%%  queue %5d/%d",
+                         name, threads, done, done / Math.max(seconds, 1e-9),
+                         100.0 * busyNanos.get() / 1e9 / Math.max(seconds * threads, 1e-9),
+                         input.size(), input.size() + input.remainingCapacity());
+  }
+}
+
+// End
@@ -0,0 +1,89 @@
+// Filename: PlainRenderer.java
+//
+// Contains the class PlainRenderer that draws the boards the way Utilities.printSolution does,
+// without any ANSI escape codes, for consoles and files that do not understand them
+//
+// This needs to be compiled with Renderer.java, Node.java and Utilities.java.
+//
+
+class PlainRenderer extends Renderer {
+
+  // return whether the renderer prints the boards
+  public boolean showsBoards() {
+    return true;
+  }
+
+  // Method to render one solved board: the initial board, the board after the first move and the answer
+  // Input: board number, board size, the two boards and the answer
+  // Output: void
+  public void render(int board_no, int board_size, Node initialBoard, Node finalBoard, String output) {
+    buffer.append("Initial Board\n");
+    appendBoard(initialBoard, board_no, board_size);
+    if(finalBoard != null) {
+      buffer.append("Board after performing all the valid moves\n");
+      appendBoard(finalBoard, board_no, board_size);
+      buffer.append('\n');
+    }
+    buffer.append(output).append('\n');
+    for(int k = 0; k < 50; k++) {
+      buffer.append('-');
+    }
+    buffer.append('\n');
+  }
+
+  // Method to append what is printed after each square, AnsiRenderer resets the colors here
+  // Input: none
+  // Output: void
+  protected void endSquare() {
+  }
+
+  // Method to append a board with its number, like Utilities.convertFromListToMatrixAndPrint
+  // Input: list, board number and board size
+  // Output: void
+  protected void appendBoard(Node list, int board_no, int board_size) {
+    fill(list, board_size);
+    buffer.append("Board No: ").append(board_no).append('\n');
+    int lineStart = buffer.length();
+    appendLine(board_size);
+    int lineEnd = buffer.length();
+    for(int i = board_size; i > 0; i--) {
+      if(i != board_size) {
+        // the dividing line is the same every time, so copy it from the first one
+        buffer.append(buffer, lineStart, lineEnd);
+      }
+      if(i < 10) {
+        buffer.append(' ');
+      }
+      buffer.append(i);
+      for(int j = 1; j <= board_size; j++) {
+        buffer.append('|');
+        char type = isFilled[i][j];
+        buffer.append(type == 0 ? ' ' : type).append(' ');
+        endSquare();
+      }
+      buffer.append("|\n");
+    }
+    buffer.append(buffer, lineStart, lineEnd);
+    buffer.append("  ");
+    for(int i = 1; i <= board_size; i++) {
+      buffer.append(' ').append(i);
+      if(i < 10) {
+        buffer.append(' ');
+      }
+    }
+    buffer.append('\n');
+  }
+
+  // Method to append the dividing horizontal strip along the board
+  // Input: board size
+  // Output: void
+  private void appendLine(int board_size) {
+    buffer.append("  ");
+    for(int i = 1; i <= board_size; i++) {
+      buffer.append("+--");
+    }
+    buffer.append("+\n");
+  }
+}
+
+// End
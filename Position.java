@@ -0,0 +1,166 @@
+// Filename: Position.java
+//
+// Contains class Position that analyses one position of a search and remembers what it found
+//
+// Every fact is worked out the first time it is asked for and then kept, so a position never has
+// its check, its king's escape squares or whether a side can still move computed twice:
+//     isCheck            is the king of the given color attacked
+//     escapeSquares      bit i is set if the king can step to possibleRowMoves[i], possibleColMoves[i]
+//                        and is no longer in check there
+//     isWeakCheckmate    the king is in check and has no escape square
+//     hasLegalMove       the given color has at least one valid move
+//     isRealCheckmate    weak checkmate and no valid move at all
+//     targets            the squares a chesspiece may try to move to, its reach on an empty board
+//                        without the squares of its own color (see Bitboard)
+// The search also makes its moves through makeValidMove, which reads the opponent's check from here
+// instead of working it out again for every move it tries.
+// The list must not change while the Position is in use.
+//
+// This needs to be compiled with ChessPuzzle.java, Bitboard.java, Mailbox.java, Node.java, ListOperations.java and Utilities.java.
+//
+
+class Position {
+
+  private static final int UNKNOWN = -1;
+
+  private ChessPuzzle puzzle; // the puzzle, for its board size and move methods
+  private Node list; // the position
+  private byte[] check = {UNKNOWN, UNKNOWN}; // 1 if the king is in check, 0 if not, for black and white
+  private int[] escapes = {UNKNOWN, UNKNOWN}; // escape squares of the king, for black and white
+  private byte[] legalMove = {UNKNOWN, UNKNOWN}; // 1 if the color can move, 0 if not, for black and white
+  private Bitboard[] own = new Bitboard[2]; // squares of the chesspieces of black and white
+  private Mailbox mailbox; // padded board of the position, made when the king steps are first needed
+
+  // constructor
+  // Input: puzzle the position belongs to and the list of the position
+  public Position(ChessPuzzle puzzle, Node list) {
+    this.puzzle = puzzle;
+    this.list = list;
+  }
+
+  // Input: color
+  // Output: returns the index of the color into the memo arrays
+  private static int side(boolean color) {
+    return color ? 1 : 0;
+  }
+
+  // Method to find the squares a chesspiece of the position may try to move to. Every other square
+  // would be turned down by getMoves or is taken by a chesspiece of the same color
+  // Input: chesspiece of the list
+  // Output: returns the squares, in the order the search tries them
+  public Bitboard targets(Node piece) {
+    int s = side(piece.getColor());
+    if(own[s] == null) {
+      own[s] = Bitboard.occupied(list, puzzle.getBoardSize(), piece.getColor());
+    }
+    return Bitboard.reach(piece, puzzle.getBoardSize()).minus(own[s]);
+  }
+
+  // Input: color of the king
+  // Output: returns if the king is in check
+  public boolean isCheck(boolean kingColor) {
+    int s = side(kingColor);
+    if(check[s] == UNKNOWN) {
+      check[s] = (byte) (puzzle.determineCheck(list, kingColor) ? 1 : 0);
+    }
+    return check[s] == 1;
+  }
+
+  // Method to find the squares around the king that get it out of check
+  // Input: color of the king
+  // Output: returns a bit per possible king move, 0 if the king is not in check
+  public int escapeSquares(boolean kingColor) {
+    int s = side(kingColor);
+    if(escapes[s] == UNKNOWN) {
+      int found = 0;
+      if(isCheck(kingColor)) {
+        Node king = puzzle.getKingNode(list, kingColor);
+        int row = king.getRow();
+        int col = king.getCol();
+        if(mailbox == null) {
+          mailbox = new Mailbox(list, puzzle.getBoardSize());
+        }
+        for(int i = 0; i < ChessPuzzle.possibleRowMoves.length; i++) {
+          // avoid possible moves out of the board, which end on a sentinel square of the padded board
+          if(!mailbox.isStepOnBoard(row, col, i)) {
+            continue;
+          }
+          // move the king to his adjacent position (or not if there is a same colored piece there),
+          // then determine if he is still under check
+          int[] query = {col, row, col+ChessPuzzle.possibleColMoves[i], row+ChessPuzzle.possibleRowMoves[i]};
+          Node newList = ListOperations.listCopy(list);
+          puzzle.makeMoves(newList, query, false);
+          if(!puzzle.determineCheck(newList, kingColor)) {
+            found |= 1 << i;
+          }
+        }
+      }
+      escapes[s] = found;
+    }
+    return escapes[s];
+  }
+
+  // Input: color of the king
+  // Output: returns if the king is in check and cannot step out of it
+  public boolean isWeakCheckmate(boolean kingColor) {
+    return isCheck(kingColor) && escapeSquares(kingColor) == 0;
+  }
+
+  // Method to find out if a color has any valid move
+  // Input: color
+  // Output: returns true as soon as one valid move is found
+  public boolean hasLegalMove(boolean color) {
+    int s = side(color);
+    if(legalMove[s] == UNKNOWN) {
+      legalMove[s] = (byte) (findLegalMove(color) ? 1 : 0);
+    }
+    return legalMove[s] == 1;
+  }
+
+  // Method that tries the moves of every chesspiece of a color, target by target
+  // Input: color
+  // Output: returns if one of them is valid
+  private boolean findLegalMove(boolean color) {
+    // no move is valid while the opponent is in check
+    if(isCheck(!color)) {
+      return false;
+    }
+    int board_size = puzzle.getBoardSize();
+    for(Node nodeSrc = list.getNext(); nodeSrc != null; nodeSrc = nodeSrc.getNext()) {
+      if(nodeSrc.getChessPiece().getColor() != color) {
+        continue;
+      }
+      Bitboard targets = targets(nodeSrc);
+      for(int square = targets.next(0); square >= 0; square = targets.next(square+1)) {
+        Node copy = ListOperations.listCopy(list);
+        int[] nextTry = {nodeSrc.getCol(), nodeSrc.getRow(), Bitboard.col(square, board_size), Bitboard.row(square, board_size)};
+        if(puzzle.makeLegalMove(copy, nextTry)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  // Input: color of the king
+  // Output: returns if the king is checkmated, in check with no escape square and no valid move
+  public boolean isRealCheckmate(boolean kingColor) {
+    return isWeakCheckmate(kingColor) && !hasLegalMove(kingColor);
+  }
+
+  // Method to make a move on a copy of this position, like ChessPuzzle.makeValidMove
+  // Input: copy of the list and the move {col, row, destCol, destRow}
+  // Output: returns if the move is valid, in which case it is performed on the copy
+  public boolean makeValidMove(Node copy, int[] move) {
+    Node toMove = ListOperations.findChessPiece(copy, move[1], move[0]);
+    if(toMove == null || toMove.getChessPiece() == null) {
+      return false;
+    }
+    if(isCheck(!toMove.getChessPiece().getColor())) {
+      return false;
+    }
+    return puzzle.makeLegalMove(copy, move);
+  }
+}
+
+// End
@@ -0,0 +1,115 @@
+// Filename: Puzzle.java
+//
+// Contains class Puzzle that holds one parsed line of input.txt
+// The chesspieces are kept in plain arrays until the puzzle is solved, when toList creates the linked list
+//
+// This needs to be compiled with Node.java and ListOperations.java.
+//
+
+import java.util.Arrays;
+
+class Puzzle {
+
+  private int boardNo; // line of input.txt the puzzle came from, counting from 1
+  private int moves; // number of moves to find the checkmate in
+  private char[] types; // type of each chesspiece, lowercase for white
+  private int[] cols; // col of each chesspiece
+  private int[] rows; // row of each chesspiece
+  private int count; // number of chesspieces
+  private long hash; // hash of the bytes of the line, for the manifest
+  private boolean invalid; // a chesspiece had a negative col or row and was left out
+
+  // constructor
+  // Input: board number, number of moves and room for the chesspieces
+  public Puzzle(int boardNo, int moves, int capacity) {
+    this.boardNo = boardNo;
+    this.moves = moves;
+    this.types = new char[capacity];
+    this.cols = new int[capacity];
+    this.rows = new int[capacity];
+    this.count = 0;
+  }
+
+  // Method to add a chesspiece, growing the arrays if needed
+  // Input: type, col and row of the chesspiece
+  // Output: void
+  public void addPiece(char type, int col, int row) {
+    if(count == types.length) {
+      types = Arrays.copyOf(types, 2*count + 1);
+      cols = Arrays.copyOf(cols, 2*count + 1);
+      rows = Arrays.copyOf(rows, 2*count + 1);
+    }
+    types[count] = type;
+    cols[count] = col;
+    rows[count] = row;
+    count++;
+  }
+
+  // return the board number
+  public int getBoardNo() {
+    return this.boardNo;
+  }
+
+  // set the board number, the reader numbers the puzzles once it knows where its chunk starts
+  public void setBoardNo(int boardNo) {
+    this.boardNo = boardNo;
+  }
+
+  // return the hash of the line
+  public long getHash() {
+    return this.hash;
+  }
+
+  // set the hash of the line
+  public void setHash(long hash) {
+    this.hash = hash;
+  }
+
+  // return if a chesspiece had a negative col or row, which makes the answer "No solution"
+  public boolean isInvalid() {
+    return this.invalid;
+  }
+
+  // mark the puzzle invalid
+  public void setInvalid() {
+    this.invalid = true;
+  }
+
+  // return the number of moves
+  public int getMoves() {
+    return this.moves;
+  }
+
+  // return the number of chesspieces
+  public int getCount() {
+    return this.count;
+  }
+
+  // return the type of the i-th chesspiece
+  public char getType(int i) {
+    return this.types[i];
+  }
+
+  // return the col of the i-th chesspiece
+  public int getCol(int i) {
+    return this.cols[i];
+  }
+
+  // return the row of the i-th chesspiece
+  public int getRow(int i) {
+    return this.rows[i];
+  }
+
+  // Method to create the linked list of the puzzle
+  // The chesspieces are inserted at the front one by one, the same way readFromInputFile always did
+  // Input: head of an empty list
+  // Output: returns the list
+  public Node toList(Node head) {
+    for(int i = 0; i < count; i++) {
+      head = ListOperations.insert(head, new Node(types[i], rows[i], cols[i]));
+    }
+    return head;
+  }
+}
+
+// End
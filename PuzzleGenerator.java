@@ -0,0 +1,213 @@
+// Filename: PuzzleGenerator.java
+//
+// Contains class PuzzleGenerator that writes random legal puzzles in the input.txt format
+//
+// Every puzzle has both kings and the chesspieces of one material set, placed on random squares.
+// A set is written like the types of input.txt, lowercase for white and uppercase for black, so
+// "qR" is a white queen against a black rook. Without --material every puzzle gets --pieces
+// chesspieces of random types and colors. Positions that BoardValidator or ChessPuzzle.invalidReason
+// reject (pawns on the first or last row, black in check and so on) are drawn again, up to
+// MAX_DRAWS times for one puzzle, and with --mate up to MAX_TRIES positions in a row may fail the
+// mate check. Past either limit the material cannot give the puzzles asked for (for example too
+// many pawns, a set that can never mate, or every position of a small set already written), and
+// the generator stops with a message instead of drawing forever.
+//
+// With --mate n only puzzles with a forced mate in exactly n are kept: the solver has to find a
+// solution in 2n-1 moves and none in 2n-3. Searches that run past --node-limit are dropped, and
+// since that limit counts nodes instead of time the output only depends on the seed.
+//
+// Usage: java PuzzleGenerator [--seed <s>] [--count <n>] [--material <set,set,...>] [--pieces <n>]
+//                             [--moves <m> | --mate <n>] [--node-limit <n>] [--tt <MB>] [--board-size <n>] <output file>
+//     for example java PuzzleGenerator --seed 7 --count 1000 --material q,r,rr,qN --mate 2 input.txt
+//
+// This needs to be compiled with ChessPuzzle.java, SolverServer.java, BoardValidator.java, Puzzle.java and Utilities.java.
+//
+
+import java.io.*;
+import java.util.HashSet;
+import java.util.Random;
+
+class PuzzleGenerator {
+
+  private static final String TYPES = "qrbnpQRBNP"; // types of the random chesspieces
+  private static final int MAX_DRAWS = 100000; // positions drawn for one puzzle before giving up
+  private static final int MAX_TRIES = 10000; // positions in a row that are not a mate in n before giving up
+
+  private Random random;
+  private String[] material; // material sets to choose from, null for random chesspieces
+  private int pieces; // chesspieces besides the kings when there are no material sets
+  private HashSet<String> seen = new HashSet<String>(); // positions drawn so far
+
+  // constructor
+  // Input: seed, material sets (null for random ones) and the number of random chesspieces
+  public PuzzleGenerator(long seed, String[] material, int pieces) {
+    this.random = new Random(seed);
+    this.material = material;
+    this.pieces = pieces;
+  }
+
+  // Method to draw a position that was not drawn before
+  // Input: none
+  // Output: returns the chesspieces as "type col row" triples, with a leading space, or null if no
+  // new legal position was found in MAX_DRAWS draws
+  public String randomPosition() {
+    for(int draw = 0; draw < MAX_DRAWS; draw++) {
+      String set;
+      if(material != null) {
+        set = material[random.nextInt(material.length)];
+      }
+      else {
+        StringBuilder types = new StringBuilder();
+        for(int i = 0; i < pieces; i++) {
+          types.append(TYPES.charAt(random.nextInt(TYPES.length())));
+        }
+        set = types.toString();
+      }
+      String all = "k" + set + "K";
+      int board_size = ChessPuzzle.boardSize;
+      boolean[] used = new boolean[board_size*board_size];
+      Puzzle puzzle = new Puzzle(1, 1, all.length());
+      StringBuilder line = new StringBuilder();
+      for(int i = 0; i < all.length(); i++) {
+        int square;
+        do {
+          square = random.nextInt(board_size*board_size);
+        } while(used[square]);
+        used[square] = true;
+        puzzle.addPiece(all.charAt(i), square%board_size + 1, square/board_size + 1);
+        line.append(' ').append(all.charAt(i)).append(' ').append(square%board_size + 1).append(' ').append(square/board_size + 1);
+      }
+      if(!seen.add(line.toString())) {
+        continue;
+      }
+      ChessPuzzle c = new ChessPuzzle(1, 1, board_size);
+      c.setHead(puzzle.toList(c.getHead()));
+      if(c.invalidReason() == null) {
+        return line.toString();
+      }
+    }
+    return null;
+  }
+
+  // Method to check that a position is a mate in exactly n
+  // Input: the position and n
+  // Output: returns if the solver finds a solution in 2n-1 moves but not in 2n-3
+  public static boolean isMateIn(String position, int n) {
+    String answer = SolverServer.solveLine((2*n - 1) + position, 1);
+    if(answer.startsWith("No solution") || answer.startsWith("Unknown") || answer.startsWith("Error")) {
+      return false;
+    }
+    if(n == 1) {
+      return true;
+    }
+    return SolverServer.solveLine((2*n - 3) + position, 1).startsWith("No solution");
+  }
+
+  // main method
+  public static void main(String[] args) {
+    long seed = 1;
+    int count = 100;
+    String[] material = null;
+    int pieces = 2;
+    int moves = 1;
+    int mate = 0;
+    long nodeLimit = 200000;
+    String fileName = null;
+    try {
+      for(int i = 0; i < args.length; i++) {
+        if(args[i].equals("--seed") && i+1 < args.length) {
+          seed = Long.parseLong(args[++i]);
+        }
+        else if(args[i].equals("--count") && i+1 < args.length) {
+          count = Integer.parseInt(args[++i]);
+        }
+        else if(args[i].equals("--material") && i+1 < args.length) {
+          material = args[++i].split(",");
+        }
+        else if(args[i].equals("--pieces") && i+1 < args.length) {
+          pieces = Integer.parseInt(args[++i]);
+        }
+        else if(args[i].equals("--moves") && i+1 < args.length) {
+          moves = Integer.parseInt(args[++i]);
+        }
+        else if(args[i].equals("--mate") && i+1 < args.length) {
+          mate = Integer.parseInt(args[++i]);
+        }
+        else if(args[i].equals("--node-limit") && i+1 < args.length) {
+          nodeLimit = Long.parseLong(args[++i]);
+        }
+        else if(args[i].equals("--board-size") && i+1 < args.length) {
+          ChessPuzzle.setBoardSize(Integer.parseInt(args[++i]));
+        }
+        else if(args[i].equals("--tt") && i+1 < args.length) {
+          ChessPuzzle.table = new TranspositionTable(Integer.parseInt(args[++i]), false);
+        }
+        else if(fileName == null && !args[i].startsWith("--")) {
+          fileName = args[i];
+        }
+        else {
+          Utilities.errExit("Unknown option: " + args[i]);
+        }
+      }
+    }
+    catch(NumberFormatException e) {
+      Utilities.errExit("All arguments must be integers");
+    }
+    if(fileName == null) {
+      Utilities.errExit("Usage: java PuzzleGenerator [options] <output file>");
+    }
+    if(moves < 1 || moves > 9 || mate < 0 || 2*mate - 1 > 9) {
+      Utilities.errExit("input.txt only has room for 1 to 9 moves");
+    }
+    if(material == null && (pieces < 0 || pieces > 30)) {
+      Utilities.errExit("Number of chesspieces must be between 0 and 30");
+    }
+    // the kings and every chesspiece of a set need a square of their own
+    int squares = ChessPuzzle.boardSize*ChessPuzzle.boardSize;
+    if(material == null && pieces + 2 > squares) {
+      Utilities.errExit("A " + ChessPuzzle.boardSize + " x " + ChessPuzzle.boardSize + " board has no room for " + pieces + " chesspieces and the kings");
+    }
+    for(int i = 0; material != null && i < material.length; i++) {
+      if(material[i].length() + 2 > squares) {
+        Utilities.errExit("A " + ChessPuzzle.boardSize + " x " + ChessPuzzle.boardSize + " board has no room for the material " + material[i] + " and the kings");
+      }
+    }
+    ChessPuzzle.renderer = new Renderer();
+    ChessPuzzle.nodeLimit = nodeLimit;
+
+    PuzzleGenerator generator = new PuzzleGenerator(seed, material, pieces);
+    try {
+      BufferedWriter out = new BufferedWriter(new FileWriter(fileName));
+      int tries = 0; // positions in a row that were not a mate in n
+      for(int written = 0; written < count; ) {
+        String position = generator.randomPosition();
+        if(position == null) {
+          out.close();
+          Utilities.errExit("No new legal position found in " + MAX_DRAWS + " draws after " + written + " puzzles, the material allows too few positions");
+        }
+        if(mate > 0) {
+          if(!isMateIn(position, mate)) {
+            if(++tries >= MAX_TRIES) {
+              out.close();
+              Utilities.errExit("No mate in " + mate + " found in " + MAX_TRIES + " positions after " + written + " puzzles, the material may not be able to mate");
+            }
+            continue;
+          }
+          tries = 0;
+          out.write((2*mate - 1) + position);
+        }
+        else {
+          out.write(moves + position);
+        }
+        out.newLine();
+        written++;
+      }
+      out.close();
+    }
+    catch(IOException e) {
+      Utilities.errExit("Cannot write " + fileName);
+    }
+  }
+}
+
+// End
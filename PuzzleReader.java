@@ -0,0 +1,215 @@
+// Filename: PuzzleReader.java
+//
+// Contains class PuzzleReader that reads large puzzle files in parallel
+//
+// The file is cut into chunks of about CHUNK_BYTES that always end right after a newline, so no line
+// is split between two chunks. Each call to readBatch memory maps the next group of chunks (one per
+// processor) and parses them at the same time, decoding the numbers straight from the bytes into
+// Puzzle objects without creating a String per line or per token. The chunks are numbered in order
+// afterwards, so every puzzle keeps the board number of its line.
+//
+// This needs to be compiled with Puzzle.java, Manifest.java and Utilities.java.
+//
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+class PuzzleReader {
+
+  private static final int CHUNK_BYTES = 8 << 20; // a chunk is cut at the first newline after 8MB
+
+  private FileChannel channel; // the puzzle file
+  private long size; // size of the file
+  private long position; // start of the next chunk
+  private int nextBoardNo; // board number of the first line of the next chunk
+  private int chunksPerBatch; // number of chunks parsed at the same time
+  private boolean hashLines; // if the puzzles get the hash of their line, which only the manifest needs
+
+  // constructor
+  // Input: name of the puzzle file and the board number of its first line
+  public PuzzleReader(String fileName, int firstBoardNo) throws IOException {
+    channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+    size = channel.size();
+    position = 0;
+    nextBoardNo = firstBoardNo;
+    chunksPerBatch = Runtime.getRuntime().availableProcessors();
+  }
+
+  // set if the puzzles get the hash of their line
+  public void setHashLines(boolean hashLines) {
+    this.hashLines = hashLines;
+  }
+
+  // Method to find where the chunk starting at the given offset ends
+  // Input: start of the chunk
+  // Output: returns the offset right after the first newline past CHUNK_BYTES, or the end of the file
+  private long chunkEnd(long start) throws IOException {
+    long end = start + CHUNK_BYTES;
+    if(end >= size) {
+      return size;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(4096);
+    while(end < size) {
+      buffer.clear();
+      int read = channel.read(buffer, end);
+      for(int i = 0; i < read; i++) {
+        if(buffer.get(i) == '\n') {
+          return end + i + 1;
+        }
+      }
+      end += read;
+    }
+    return size;
+  }
+
+  // Method to read the next group of chunks
+  // Input: none
+  // Output: returns the puzzles in the order of their lines, or an empty list at the end of the file
+  public ArrayList<Puzzle> readBatch() throws IOException {
+    ArrayList<MappedByteBuffer> chunks = new ArrayList<MappedByteBuffer>();
+    while(chunks.size() < chunksPerBatch && position < size) {
+      long end = chunkEnd(position);
+      chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, position, end - position));
+      position = end;
+    }
+    ArrayList<ArrayList<Puzzle>> parsed = new ArrayList<ArrayList<Puzzle>>();
+    for(int i = 0; i < chunks.size(); i++) {
+      parsed.add(null);
+    }
+    IntStream.range(0, chunks.size()).parallel().forEach(i -> parsed.set(i, parseChunk(chunks.get(i), hashLines)));
+
+    // now that every chunk knows how many lines it has, give the puzzles their board numbers
+    ArrayList<Puzzle> puzzles = new ArrayList<Puzzle>();
+    for(int i = 0; i < parsed.size(); i++) {
+      for(Puzzle puzzle : parsed.get(i)) {
+        puzzle.setBoardNo(nextBoardNo++);
+        puzzles.add(puzzle);
+      }
+    }
+    return puzzles;
+  }
+
+  // Method to parse every line of a chunk
+  // Input: the mapped chunk and if the lines are hashed
+  // Output: returns the puzzles, with board numbers relative to the chunk
+  private static ArrayList<Puzzle> parseChunk(ByteBuffer chunk, boolean hashLines) {
+    ArrayList<Puzzle> puzzles = new ArrayList<Puzzle>();
+    int start = 0;
+    int limit = chunk.limit();
+    try {
+      while(start < limit) {
+        int end = start;
+        while(end < limit && chunk.get(end) != '\n') {
+          end++;
+        }
+        Puzzle puzzle = parseLine(chunk, start, end, puzzles.size() + 1, hashLines);
+        if(puzzle != null) {
+          puzzles.add(puzzle);
+        }
+        start = end + 1;
+      }
+    }
+    catch(IllegalArgumentException e) {
+      Utilities.errExit(e.getMessage()); // a bad line stops the whole file, like it always did
+    }
+    return puzzles;
+  }
+
+  // Method to parse one line: the number of moves followed by "type col row" for every chesspiece
+  // Like readFromInputFile always did, only the first digit of the first token is the number of moves
+  // and only the first character of a type token is used
+  // Input: the chunk, the bytes of the line, its board number and if the line is hashed for the manifest
+  // A chesspiece with a negative col or row is left out and the puzzle is marked invalid, so it is
+  // answered "No solution" like any other board that is off the board, instead of stopping the batch
+  // Output: returns the puzzle, or null for an empty line, throws IllegalArgumentException for a bad line
+  public static Puzzle parseLine(ByteBuffer chunk, int start, int end, int boardNo, boolean hashLine) {
+    while(end > start && (chunk.get(end-1) == '\r' || chunk.get(end-1) == ' ')) {
+      end--;
+    }
+    int i = skipSpaces(chunk, start, end);
+    if(i == end) {
+      return null;
+    }
+    byte first = chunk.get(i);
+    if(first < '0' || first > '9') {
+      throw new IllegalArgumentException("All arguments must be integers");
+    }
+    Puzzle puzzle = new Puzzle(boardNo, first - '0', 8);
+    if(hashLine) {
+      puzzle.setHash(Manifest.hash(chunk, i, end));
+    }
+    i = skipToken(chunk, i, end);
+    while((i = skipSpaces(chunk, i, end)) < end) {
+      char type = (char) chunk.get(i);
+      i = skipSpaces(chunk, skipToken(chunk, i, end), end);
+      int colEnd = skipToken(chunk, i, end);
+      int col = parseInt(chunk, i, colEnd);
+      i = skipSpaces(chunk, colEnd, end);
+      int rowEnd = skipToken(chunk, i, end);
+      int row = parseInt(chunk, i, rowEnd);
+      if(col < 0 || row < 0) {
+        puzzle.setInvalid();
+      }
+      else {
+        puzzle.addPiece(type, col, row);
+      }
+      i = rowEnd;
+    }
+    return puzzle;
+  }
+
+  // Input: chunk and a range of bytes
+  // Output: returns the first offset in the range that is not a space
+  private static int skipSpaces(ByteBuffer chunk, int i, int end) {
+    while(i < end && chunk.get(i) == ' ') {
+      i++;
+    }
+    return i;
+  }
+
+  // Input: chunk and a range of bytes
+  // Output: returns the first offset in the range that is a space
+  private static int skipToken(ByteBuffer chunk, int i, int end) {
+    while(i < end && chunk.get(i) != ' ') {
+      i++;
+    }
+    return i;
+  }
+
+  // Method to parse an integer straight from the bytes
+  // Input: chunk and the bytes of the number
+  // Output: returns the number, throws IllegalArgumentException if the bytes are missing or not digits
+  private static int parseInt(ByteBuffer chunk, int start, int end) {
+    boolean negative = start < end && chunk.get(start) == '-';
+    if(negative) {
+      start++;
+    }
+    if(start == end) {
+      throw new IllegalArgumentException(negative ? "All arguments must be integers" : "Array index is out of bounds");
+    }
+    int value = 0;
+    for(int i = start; i < end; i++) {
+      byte digit = chunk.get(i);
+      if(digit < '0' || digit > '9') {
+        throw new IllegalArgumentException("All arguments must be integers");
+      }
+      value = value*10 + (digit - '0');
+    }
+    return negative ? -value : value;
+  }
+
+  // Method to close the file
+  // Input: none
+  // Output: void
+  public void close() throws IOException {
+    channel.close();
+  }
+}
+
+// End
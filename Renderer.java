@@ -0,0 +1,114 @@
+// Filename: Renderer.java
+//
+// Contains the class Renderer that prints the solved boards onto the console
+// which is the super class for all the output modes
+//
+// Renderer itself prints nothing, which is the "none" mode for batch runs nobody watches.
+// PlainRenderer, AnsiRenderer and JsonRenderer override render. All of them append into one
+// StringBuilder that is kept between boards, along with the char grid the board is drawn from, and
+// the buffer only goes to the console when flush is called, which the pipeline does once per batch
+// (or earlier, if the buffer grows past FLUSH_CHARS).
+//
+// This needs to be compiled with Node.java and Utilities.java.
+//
+
+import java.io.*;
+
+class Renderer {
+
+  public static final int FLUSH_CHARS = 1 << 20; // the buffer is flushed early once it is this long
+
+  protected StringBuilder buffer = new StringBuilder(); // what has been rendered since the last flush
+  protected char[][] isFilled = new char[0][0]; // board being drawn, kept for the next board
+  private char[] chars = new char[0]; // the buffer copied out for writing
+  private Writer out = new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)); // the console
+
+  // Method to create the renderer of an output mode
+  // Input: none, plain, ansi or json
+  // Output: returns the renderer, exits on an unknown mode
+  public static Renderer create(String mode) {
+    if(mode.equals("none")) {
+      return new Renderer();
+    }
+    else if(mode.equals("plain")) {
+      return new PlainRenderer();
+    }
+    else if(mode.equals("ansi")) {
+      return new AnsiRenderer();
+    }
+    else if(mode.equals("json")) {
+      return new JsonRenderer();
+    }
+    Utilities.errExit("Unknown output mode: " + mode);
+    return null;
+  }
+
+  // return whether the renderer prints the boards, if not there is no need to keep a copy of them
+  public boolean showsBoards() {
+    return false;
+  }
+
+  // Method to render one solved board
+  // Input: board number, board size, the board as it was read, the board after the first move of
+  // the solution (null if there is none) and the answer written to solution.txt
+  // Output: void, nothing for this mode
+  public void render(int board_no, int board_size, Node initialBoard, Node finalBoard, String output) {
+  }
+
+  // Method to write the buffer to the console if it has grown too long
+  // Input: none
+  // Output: void
+  public void flushIfFull() {
+    if(buffer.length() >= FLUSH_CHARS) {
+      flush();
+    }
+  }
+
+  // Method to write the buffer to the console and empty it for the next boards
+  // Input: none
+  // Output: void
+  public void flush() {
+    int length = buffer.length();
+    if(length == 0) {
+      return;
+    }
+    if(chars.length < length) {
+      chars = new char[Math.max(length, 2*chars.length)];
+    }
+    buffer.getChars(0, length, chars, 0);
+    buffer.setLength(0);
+    try {
+      out.write(chars, 0, length);
+      out.flush();
+    }
+    catch(IOException e) {
+      Utilities.errExit("Exception occurred while trying to write to the console");
+    }
+  }
+
+  // Method to fill isFilled from the list, growing it only if the board got bigger
+  // Chesspieces off the board, which only an invalid board has, are left out
+  // Input: list and board size
+  // Output: void
+  protected void fill(Node list, int board_size) {
+    if(isFilled.length < board_size+1) {
+      isFilled = new char[board_size+1][board_size+1];
+    }
+    for(int i = 1; i <= board_size; i++) {
+      for(int j = 1; j <= board_size; j++) {
+        isFilled[i][j] = 0;
+      }
+    }
+    Node piece = list.getNext();
+    while(piece != null) {
+      int row = piece.getRow();
+      int col = piece.getCol();
+      if(row >= 1 && col >= 1 && row <= board_size && col <= board_size) {
+        isFilled[row][col] = Utilities.returnChessPieceType(piece);
+      }
+      piece = piece.getNext();
+    }
+  }
+}
+
+// End
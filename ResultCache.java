@@ -0,0 +1,175 @@
+// Filename: ResultCache.java
+//
+// Contains class ResultCache that keeps the solutions of recently solved puzzles in memory
+//
+// Meant for the resident server, where the same popular puzzles come in again and again from
+// different clients. It maps the exact key of a puzzle to its solution (the verdict and the first
+// move). "No solution" is also kept under the canonical key, which the mirror images of the puzzle
+// share, since it holds for all of them while the move does not (see ChessPuzzle.solve). The cache
+// is bounded by an estimate of the bytes it holds.
+//
+// Entries are evicted by segmented LRU: a new entry goes into the probation segment, and only
+// when it is asked for again is it promoted to the protected segment, which gets 80% of the bytes.
+// A burst of puzzles that are seen once therefore only pushes out other one-off puzzles, never
+// the popular ones. To keep the threads of the server from waiting on each other the cache is
+// split into SEGMENTS independent parts by key, each with its own lock.
+//
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+class ResultCache {
+
+  private static final int SEGMENTS = 16; // independently locked parts
+  private static final int ENTRY_BYTES = 96; // estimate of the memory an entry takes besides its characters
+
+  private Segment[] segments = new Segment[SEGMENTS];
+  private AtomicLong hits = new AtomicLong();
+  private AtomicLong misses = new AtomicLong();
+  private AtomicLong evictions = new AtomicLong();
+
+  // one independently locked part of the cache
+  private class Segment {
+    // least recently used first
+    private LinkedHashMap<Long, String> probation = new LinkedHashMap<Long, String>(16, 0.75f, true);
+    private LinkedHashMap<Long, String> protect = new LinkedHashMap<Long, String>(16, 0.75f, true);
+    private long probationBytes;
+    private long protectBytes;
+    private long capacity; // bytes the segment may hold
+
+    private Segment(long capacity) {
+      this.capacity = capacity;
+    }
+
+    private synchronized String get(long key) {
+      String solution = protect.get(key);
+      if(solution != null) {
+        return solution;
+      }
+      solution = probation.remove(key);
+      if(solution != null) {
+        // asked for a second time, so it is worth protecting
+        probationBytes -= bytes(solution);
+        protect.put(key, solution);
+        protectBytes += bytes(solution);
+        // keep the protected segment within its share by moving its oldest entries back to probation
+        Iterator<Map.Entry<Long, String>> oldest = protect.entrySet().iterator();
+        while(protectBytes > capacity*4/5 && oldest.hasNext()) {
+          Map.Entry<Long, String> entry = oldest.next();
+          oldest.remove();
+          protectBytes -= bytes(entry.getValue());
+          probation.put(entry.getKey(), entry.getValue());
+          probationBytes += bytes(entry.getValue());
+        }
+        evict();
+      }
+      return solution;
+    }
+
+    private synchronized void put(long key, String solution) {
+      if(protect.containsKey(key) || probation.containsKey(key)) {
+        return;
+      }
+      probation.put(key, solution);
+      probationBytes += bytes(solution);
+      evict();
+    }
+
+    // evict the least recently used entries of probation, and of protected if that is not enough
+    private void evict() {
+      evict(probation, true);
+      evict(protect, false);
+    }
+
+    private void evict(LinkedHashMap<Long, String> map, boolean isProbation) {
+      Iterator<Map.Entry<Long, String>> oldest = map.entrySet().iterator();
+      while(probationBytes + protectBytes > capacity && oldest.hasNext()) {
+        String solution = oldest.next().getValue();
+        oldest.remove();
+        if(isProbation) {
+          probationBytes -= bytes(solution);
+        }
+        else {
+          protectBytes -= bytes(solution);
+        }
+        evictions.incrementAndGet();
+      }
+    }
+
+    private synchronized int size() {
+      return probation.size() + protect.size();
+    }
+
+    private synchronized long used() {
+      return probationBytes + protectBytes;
+    }
+  }
+
+  // constructor
+  // Input: size of the cache in megabytes
+  public ResultCache(int megabytes) {
+    for(int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment(((long) megabytes << 20) / SEGMENTS);
+    }
+  }
+
+  // Input: solution
+  // Output: returns the estimate of the bytes its entry takes
+  private static long bytes(String solution) {
+    return ENTRY_BYTES + 2L*solution.length();
+  }
+
+  // Input: key
+  // Output: returns the segment that holds the key
+  private Segment segment(long key) {
+    return segments[(int) (key ^ (key >>> 32)) & (SEGMENTS-1)];
+  }
+
+  // Method to look a puzzle up, which counts as one hit or one miss
+  // Input: exact key and canonical key of the puzzle
+  // Output: returns the solution kept under the exact key, "No solution" if a mirror image has none,
+  // or null if neither is in the cache
+  public String lookup(long key, long canonicalKey) {
+    String solution = segment(key).get(key);
+    if(solution == null) {
+      solution = segment(canonicalKey).get(canonicalKey);
+      if(solution != null && !solution.equals("No solution")) {
+        solution = null;
+      }
+    }
+    if(solution != null) {
+      hits.incrementAndGet();
+    }
+    else {
+      misses.incrementAndGet();
+    }
+    return solution;
+  }
+
+  // Method to remember the solution of a puzzle
+  // Input: exact key and solution, or canonical key and "No solution"
+  // Output: void
+  public void store(long key, String solution) {
+    segment(key).put(key, solution);
+  }
+
+  // Method to describe how well the cache does
+  // Input: none
+  // Output: returns the hits, misses, entries and bytes used
+  public String describe() {
+    int entries = 0;
+    long used = 0;
+    for(Segment segment : segments) {
+      entries += segment.size();
+      used += segment.used();
+    }
+    long lookups = hits.get() + misses.get();
+    return String.format("result cache: %d hits, %d misses (%.1f%% hit rate), %d entries, %d KB, %d evicted",
+                         hits.get(), misses.get(), 100.0 * hits.get() / Math.max(lookups, 1),
+                         entries, used >> 10, evictions.get());
+  }
+}
+
+// End
@@ -0,0 +1,141 @@
+// Filename: SearchStats.java
+//
+// Contains class SearchStats that counts what the search did for one puzzle
+//
+// Turned on by naming the file the statistics go to when starting the JVM:
+//     java -Dchess.stats=stats.jsonl ChessPuzzle
+// The file gets one JSON line per board, in the order of solution.txt, for example
+//     {"board":2,"moves":1,"verdict":"q 1 7 7 7","source":"search","ms":12.3,"nodes":40,"nps":3252,
+//      "nodesPerPly":[1,39],"branching":39.0,"movesTried":2560,"movesLegal":39,"ttProbes":0,"ttHits":0,
+//      "tbProbes":0,"tbHits":0,"checkCalls":5231,"checkMs":4.1,"moveGenMs":9.8,"mateMs":1.2}
+// source is search, timeout, cache (either cache), duplicate (solved by an earlier line of the
+// batch), manifest (answered by the previous run, see Manifest), checkpoint (solved by the run that
+// is resumed, see Checkpoint) or invalid. ttProbes and ttHits count the transposition table,
+// tbProbes and tbHits the tablebases, which are asked first. Times are inclusive: checkMs counts every determineCheck, including the ones
+// done inside move generation (moveGenMs) and checkmate detection at the leaves (mateMs).
+//
+// ENABLED is a static final read once from the system property, so when the statistics are off
+// every "if(SearchStats.ENABLED)" in the search is removed by the JIT and costs nothing.
+//
+
+import java.util.Locale;
+
+class SearchStats {
+
+  public static final String FILE = System.getProperty("chess.stats"); // where the statistics go
+  public static final boolean ENABLED = FILE != null;
+
+  private long[] nodesPerPly; // search nodes at each ply, 0 is the root
+  private long movesTried; // candidate moves checked with makeValidMove
+  private long movesLegal; // candidate moves that were valid
+  private long ttProbes; // positions looked up in the transposition table
+  private long ttHits; // transposition table lookups that gave an answer
+  private long tbProbes; // positions looked up in the tablebases
+  private long tbHits; // tablebase lookups that gave an answer
+  private long checkCalls; // calls to determineCheck
+  private long checkNanos;
+  private long moveGenNanos;
+  private long mateNanos;
+
+  // constructor
+  // Input: number of moves of the puzzle, which is the deepest ply
+  public SearchStats(int moves) {
+    nodesPerPly = new long[moves+1];
+  }
+
+  // Method to count a search node
+  // Input: ply of the node
+  // Output: void
+  public void node(int ply) {
+    if(ply >= 0 && ply < nodesPerPly.length) {
+      nodesPerPly[ply]++;
+    }
+  }
+
+  // Method to count a candidate move
+  // Input: if it was valid and the time it took to find out
+  // Output: void
+  public void move(boolean legal, long nanos) {
+    movesTried++;
+    if(legal) {
+      movesLegal++;
+    }
+    moveGenNanos += nanos;
+  }
+
+  // Method to count a lookup of a position in the transposition table
+  // Input: if it gave an answer
+  // Output: void
+  public void ttProbe(boolean hit) {
+    ttProbes++;
+    if(hit) {
+      ttHits++;
+    }
+  }
+
+  // Method to count a lookup of a position in the tablebases
+  // Input: if it gave an answer
+  // Output: void
+  public void tbProbe(boolean hit) {
+    tbProbes++;
+    if(hit) {
+      tbHits++;
+    }
+  }
+
+  // Method to count a call to determineCheck
+  // Input: time it took
+  // Output: void
+  public void check(long nanos) {
+    checkCalls++;
+    checkNanos += nanos;
+  }
+
+  // Method to count a checkmate detection at a leaf
+  // Input: time it took
+  // Output: void
+  public void mate(long nanos) {
+    mateNanos += nanos;
+  }
+
+  // Method to describe a board and what its search did as one JSON line
+  // Input: board number, moves, verdict, where the verdict came from, total time and the
+  // statistics of the search (null if the board was not searched)
+  // Output: returns the line, without a newline
+  public static String toJson(int board_no, int moves, String verdict, String source, long nanos, SearchStats stats) {
+    StringBuilder line = new StringBuilder();
+    line.append("{\"board\":").append(board_no).append(",\"moves\":").append(moves);
+    line.append(",\"verdict\":\"").append(verdict.replace("\\", "\\\\").replace("\"", "\\\""));
+    line.append("\",\"source\":\"").append(source).append('"');
+    line.append(String.format(Locale.ROOT, ",\"ms\":%.1f", nanos / 1e6));
+    if(stats != null) {
+      long nodes = 0;
+      for(int ply = 0; ply < stats.nodesPerPly.length; ply++) {
+        nodes += stats.nodesPerPly[ply];
+      }
+      // the nodes of the last ply are leaves, every other node had moves to try
+      long interior = nodes - stats.nodesPerPly[stats.nodesPerPly.length-1];
+      line.append(",\"nodes\":").append(nodes);
+      line.append(",\"nps\":").append((long) (nodes / Math.max(nanos / 1e9, 1e-9)));
+      line.append(",\"nodesPerPly\":[");
+      for(int ply = 0; ply < stats.nodesPerPly.length; ply++) {
+        line.append(ply > 0 ? "," : "").append(stats.nodesPerPly[ply]);
+      }
+      line.append(']');
+      line.append(String.format(Locale.ROOT, ",\"branching\":%.1f", (double) stats.movesLegal / Math.max(interior, 1)));
+      line.append(",\"movesTried\":").append(stats.movesTried);
+      line.append(",\"movesLegal\":").append(stats.movesLegal);
+      line.append(",\"ttProbes\":").append(stats.ttProbes);
+      line.append(",\"ttHits\":").append(stats.ttHits);
+      line.append(",\"tbProbes\":").append(stats.tbProbes);
+      line.append(",\"tbHits\":").append(stats.tbHits);
+      line.append(",\"checkCalls\":").append(stats.checkCalls);
+      line.append(String.format(Locale.ROOT, ",\"checkMs\":%.1f,\"moveGenMs\":%.1f,\"mateMs\":%.1f",
+                                stats.checkNanos / 1e6, stats.moveGenNanos / 1e6, stats.mateNanos / 1e6));
+    }
+    line.append('}');
+    return line.toString();
+  }
+}
+
+// End
@@ -0,0 +1,19 @@
+// Filename: SearchTimeoutException.java
+//
+// Contains class SearchTimeoutException that the search throws when a puzzle runs out of its time or
+// node budget. It unwinds the whole search at once, past the transposition table stores, so nothing
+// found by a search that did not finish is remembered as a result.
+//
+
+class SearchTimeoutException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  // constructor
+  // Input: which budget ran out
+  public SearchTimeoutException(String message) {
+    super(message);
+  }
+}
+
+// End
@@ -0,0 +1,284 @@
+// Filename: ShardRunner.java
+//
+// Contains class ShardRunner that solves a big puzzle file with several solver JVMs at once
+//
+// The puzzle file is split by board number into one shard per worker, each a contiguous range of
+// its non-empty lines, written to a temporary directory. Every worker is a separate JVM running
+// ChessPuzzle on its shard with --first-board set to the number of its first board, so its heap
+// and garbage collector only ever see its own part of the batch. A worker that exits with an error,
+// or leaves fewer answers than its shard has boards, is started again on the same shard, up to
+// --retries times. Once every shard is done, the answers are joined into one solution file in the
+// original order. Options after "--" are passed on to every worker, for example --tt 512. Options
+// that name a file of their own (--manifest, --cache, --checkpoint, --resume) would have every
+// worker write the same file, and the ones that choose the boards (--input, --output, --binary,
+// --first-board, --serve) are set by ShardRunner itself, so none of them can be passed on. The
+// temporary directory is removed when the run ends, also when it fails or is interrupted.
+//
+// Usage: java ShardRunner [--workers <n>] [--retries <n>] [--input <file>] [--output <file>] [-- <ChessPuzzle options>]
+//
+// This needs to be compiled with ChessPuzzle.java and Utilities.java.
+//
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class ShardRunner {
+
+  // ChessPuzzle options that the workers cannot share or that ShardRunner sets for each shard
+  private static final List<String> SHARD_OPTIONS = Arrays.asList("--manifest", "--cache", "--checkpoint", "--resume",
+                                                                  "--input", "--output", "--binary", "--first-board",
+                                                                  "--serve");
+
+  private int workers; // number of worker JVMs
+  private int retries; // times a shard is started again after its worker failed
+  private ArrayList<String> workerOptions; // passed on to ChessPuzzle
+  private Path directory; // where the shards and their answers go
+  private int[] firstBoard; // board number of the first line of each shard
+  private int[] boards; // number of boards in each shard
+  private Process[] running; // worker of each shard, null once the shard is done
+
+  // constructor
+  // Input: number of workers, retries per shard and the options for ChessPuzzle
+  public ShardRunner(int workers, int retries, ArrayList<String> workerOptions) {
+    this.workers = workers;
+    this.retries = retries;
+    this.workerOptions = workerOptions;
+  }
+
+  // Input: shard number
+  // Output: returns the puzzle file of the shard
+  private File shardFile(int shard) {
+    return directory.resolve("shard-" + shard + ".txt").toFile();
+  }
+
+  // Input: shard number
+  // Output: returns the answer file of the shard
+  private File answerFile(int shard) {
+    return directory.resolve("shard-" + shard + ".solution.txt").toFile();
+  }
+
+  // Method to split the puzzle file into shards of about the same number of boards
+  // Input: name of the puzzle file
+  // Output: void
+  private void split(String inputFile) throws IOException {
+    int total = 0;
+    BufferedReader in = new BufferedReader(new FileReader(inputFile));
+    String line;
+    while((line = in.readLine()) != null) {
+      if(!line.trim().isEmpty()) {
+        total++;
+      }
+    }
+    in.close();
+
+    // never more shards than boards, and at least one so an empty file still gives an empty answer
+    workers = Math.max(1, Math.min(workers, total));
+    firstBoard = new int[workers];
+    boards = new int[workers];
+    for(int shard = 0; shard < workers; shard++) {
+      firstBoard[shard] = 1 + (int) ((long) total * shard / workers);
+      boards[shard] = 1 + (int) ((long) total * (shard+1) / workers) - firstBoard[shard];
+    }
+
+    in = new BufferedReader(new FileReader(inputFile));
+    for(int shard = 0; shard < workers; shard++) {
+      BufferedWriter out = new BufferedWriter(new FileWriter(shardFile(shard)));
+      for(int written = 0; written < boards[shard]; ) {
+        line = in.readLine();
+        if(line.trim().isEmpty()) {
+          continue;
+        }
+        out.write(line);
+        out.newLine();
+        written++;
+      }
+      out.close();
+    }
+    in.close();
+  }
+
+  // Method to start the worker of a shard
+  // Input: shard number
+  // Output: returns the worker process
+  private Process start(int shard) throws IOException {
+    ArrayList<String> command = new ArrayList<String>();
+    command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add("ChessPuzzle");
+    command.add("--render");
+    command.add("none");
+    command.addAll(workerOptions);
+    command.add("--input");
+    command.add(shardFile(shard).getPath());
+    command.add("--output");
+    command.add(answerFile(shard).getPath());
+    command.add("--first-board");
+    command.add(Integer.toString(firstBoard[shard]));
+    ProcessBuilder builder = new ProcessBuilder(command);
+    builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+    builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+    return builder.start();
+  }
+
+  // Input: shard number
+  // Output: returns if the answer file of the shard has an answer for every board
+  private boolean isComplete(int shard) throws IOException {
+    File answers = answerFile(shard);
+    if(!answers.exists()) {
+      return false;
+    }
+    int lines = 0;
+    BufferedReader in = new BufferedReader(new FileReader(answers));
+    while(in.readLine() != null) {
+      lines++;
+    }
+    in.close();
+    return lines == boards[shard];
+  }
+
+  // Method to stop the workers and remove the temporary directory with everything in it
+  // Input: none
+  // Output: void
+  private synchronized void cleanUp() {
+    if(running != null) {
+      for(Process worker : running) {
+        if(worker != null) {
+          worker.destroy();
+        }
+      }
+    }
+    File[] files = directory.toFile().listFiles();
+    if(files != null) {
+      for(File file : files) {
+        file.delete();
+      }
+    }
+    directory.toFile().delete();
+  }
+
+  // Method to solve a puzzle file with the workers and merge their answers
+  // Input: names of the puzzle file and the solution file
+  // Output: void
+  public void run(String inputFile, String outputFile) throws IOException, InterruptedException {
+    directory = Files.createTempDirectory("chess-shards");
+    // errExit and Ctrl-C end the JVM without leaving this method, so the hook cleans up for them
+    Thread hook = new Thread(this::cleanUp);
+    Runtime.getRuntime().addShutdownHook(hook);
+    try {
+      solveShards(inputFile, outputFile);
+    }
+    finally {
+      cleanUp();
+      Runtime.getRuntime().removeShutdownHook(hook);
+    }
+  }
+
+  // Method to split the puzzle file, run a worker on every shard and join the answers
+  // Input: names of the puzzle file and the solution file
+  // Output: void
+  private void solveShards(String inputFile, String outputFile) throws IOException, InterruptedException {
+    split(inputFile);
+
+    running = new Process[workers];
+    int[] attempts = new int[workers];
+    for(int shard = 0; shard < workers; shard++) {
+      running[shard] = start(shard);
+      attempts[shard] = 1;
+    }
+    int done = 0;
+    while(done < workers) {
+      for(int shard = 0; shard < workers; shard++) {
+        if(running[shard] == null || running[shard].isAlive()) {
+          continue;
+        }
+        int exit = running[shard].exitValue();
+        if(exit == 0 && isComplete(shard)) {
+          running[shard] = null;
+          done++;
+        }
+        else if(attempts[shard] > retries) {
+          Utilities.errExit("Shard " + shard + " (boards " + firstBoard[shard] + " to "
+                            + (firstBoard[shard] + boards[shard] - 1) + ") failed " + attempts[shard] + " times");
+        }
+        else {
+          System.err.println("Worker of shard " + shard + " failed with exit code " + exit + ", starting it again");
+          answerFile(shard).delete();
+          running[shard] = start(shard);
+          attempts[shard]++;
+        }
+      }
+      Thread.sleep(50);
+    }
+
+    // join the answers in the order of the shards, which is the order of the boards
+    BufferedWriter out = new BufferedWriter(new FileWriter(outputFile));
+    for(int shard = 0; shard < workers; shard++) {
+      BufferedReader in = new BufferedReader(new FileReader(answerFile(shard)));
+      String line;
+      while((line = in.readLine()) != null) {
+        out.write(line);
+        out.newLine();
+      }
+      in.close();
+    }
+    out.close();
+  }
+
+  // main method
+  public static void main(String[] args) {
+    int workers = Runtime.getRuntime().availableProcessors();
+    int retries = 2;
+    String inputFile = "input.txt";
+    String outputFile = "solution.txt";
+    ArrayList<String> workerOptions = new ArrayList<String>();
+    try {
+      for(int i = 0; i < args.length; i++) {
+        if(args[i].equals("--")) {
+          for(i++; i < args.length; i++) {
+            if(SHARD_OPTIONS.contains(args[i])) {
+              Utilities.errExit("Option " + args[i] + " cannot be passed on to the workers");
+            }
+            workerOptions.add(args[i]);
+          }
+        }
+        else if(args[i].equals("--workers") && i+1 < args.length) {
+          workers = Integer.parseInt(args[++i]);
+        }
+        else if(args[i].equals("--retries") && i+1 < args.length) {
+          retries = Integer.parseInt(args[++i]);
+        }
+        else if(args[i].equals("--input") && i+1 < args.length) {
+          inputFile = args[++i];
+        }
+        else if(args[i].equals("--output") && i+1 < args.length) {
+          outputFile = args[++i];
+        }
+        else {
+          Utilities.errExit("Unknown option: " + args[i]);
+        }
+      }
+    }
+    catch(NumberFormatException e) {
+      Utilities.errExit("All arguments must be integers");
+    }
+    if(workers < 1) {
+      Utilities.errExit("Number of workers must be positive");
+    }
+    try {
+      new ShardRunner(workers, retries, workerOptions).run(inputFile, outputFile);
+    }
+    catch(IOException e) {
+      Utilities.errExit("Error while running the shards: " + e.getMessage());
+    }
+    catch(InterruptedException e) {
+      Utilities.errExit("Interrupted while waiting for the workers");
+    }
+  }
+}
+
+// End
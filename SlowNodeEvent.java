@@ -0,0 +1,40 @@
+// Filename: SlowNodeEvent.java
+//
+// Contains class SlowNodeEvent, the flight recorder event of a search node that took long
+//
+// The time of a node includes everything searched below it. Only nodes that take longer than the
+// threshold (100 ms unless the recording sets another) are recorded, so the deep, cheap nodes
+// never reach the recording. Off unless a recording turns it on, see SolveEvent.
+//
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("ChessPuzzle.SlowNode")
+@Label("Slow Search Node")
+@Category("Chess Puzzle")
+@Description("A search node, with everything below it, that took longer than the threshold")
+@Enabled(false)
+@Threshold("100 ms")
+class SlowNodeEvent extends Event {
+
+  @Label("Board")
+  int board;
+
+  @Label("Moves Left")
+  int movesLeft;
+
+  @Label("White Checkmates")
+  @Description("Whether the node is in the search for a checkmate by white")
+  boolean white;
+
+  @Label("Solved")
+  boolean solved;
+}
+
+// End
@@ -0,0 +1,117 @@
+// Filename: SolutionCache.java
+//
+// Contains class SolutionCache that keeps the solutions of puzzles in a file, so that
+// a puzzle that was solved in an earlier run does not need to be searched again
+//
+// The file is a log of records that are only ever appended:
+//     int magic, long key, short length, length bytes of the solution, int CRC32 of everything before it
+// When the file is opened, it is memory mapped and scanned once to build the index. A record
+// that was only half written when a run died fails its CRC, and the file is cut back to the
+// last good record, so new records always follow complete ones.
+//
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+class SolutionCache {
+
+  private static final int MAGIC = 0x43505331; // "CPS1", marks the start of each record
+  private static final int HEADER_BYTES = 4 + 8 + 2; // magic, key and length
+  private static final int CRC_BYTES = 4;
+
+  private FileChannel channel; // the cache file
+  private long end; // offset right after the last good record
+  private HashMap<Long, String> index = new HashMap<Long, String>(); // key to solution, built when opening
+
+  // constructor, opens the file (creating it if needed) and reads all the good records
+  // Input: name of the cache file
+  public SolutionCache(String fileName) throws IOException {
+    channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+    long size = channel.size();
+    if(size > 0) {
+      MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      end = readRecords(map);
+    }
+    if(end < size) {
+      // throw away the broken tail so that the next append starts at a good record
+      channel.truncate(end);
+    }
+  }
+
+  // Method to scan the mapped file and index every record until the first broken one
+  // Input: the mapped file
+  // Output: returns the offset right after the last good record
+  private long readRecords(MappedByteBuffer map) {
+    int position = 0;
+    CRC32 crc = new CRC32();
+    while(map.limit() - position >= HEADER_BYTES + CRC_BYTES) {
+      if(map.getInt(position) != MAGIC) {
+        break;
+      }
+      long key = map.getLong(position + 4);
+      int length = map.getShort(position + 12) & 0xffff;
+      if(map.limit() - position < HEADER_BYTES + length + CRC_BYTES) {
+        break;
+      }
+      byte[] record = new byte[HEADER_BYTES + length];
+      map.position(position);
+      map.get(record);
+      crc.reset();
+      crc.update(record);
+      if((int) crc.getValue() != map.getInt(position + HEADER_BYTES + length)) {
+        break;
+      }
+      index.put(key, new String(record, HEADER_BYTES, length, StandardCharsets.US_ASCII));
+      position += HEADER_BYTES + length + CRC_BYTES;
+    }
+    return position;
+  }
+
+  // Method to find the solution of a puzzle
+  // Input: key of the puzzle
+  // Output: returns the solution, or null if the puzzle was never solved
+  public synchronized String lookup(long key) {
+    return index.get(key);
+  }
+
+  // Method to append the solution of a puzzle to the file
+  // Input: key of the puzzle and its solution
+  // Output: void, just append
+  public synchronized void append(long key, String solution) throws IOException {
+    if(index.containsKey(key)) {
+      return;
+    }
+    byte[] text = solution.getBytes(StandardCharsets.US_ASCII);
+    ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + text.length + CRC_BYTES);
+    record.putInt(MAGIC);
+    record.putLong(key);
+    record.putShort((short) text.length);
+    record.put(text);
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), 0, HEADER_BYTES + text.length);
+    record.putInt((int) crc.getValue());
+    record.flip();
+    while(record.hasRemaining()) {
+      end += channel.write(record, end);
+    }
+    index.put(key, solution);
+  }
+
+  // Method to flush the records to the disk and close the file
+  // Input: none
+  // Output: void
+  public synchronized void close() throws IOException {
+    channel.force(false);
+    channel.close();
+  }
+}
+
+// End
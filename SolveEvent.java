@@ -0,0 +1,45 @@
+// Filename: SolveEvent.java
+//
+// Contains class SolveEvent, the flight recorder event of solving one board
+//
+// The event starts when the solve stage picks the board up and ends when its answer is known, so
+// in JFR tooling it shows the board number, moves, verdict and searched nodes next to whatever
+// else the JVM did meanwhile. Like all the events of the solver it is off unless a recording
+// turns it on, for example with
+//     java -XX:StartFlightRecording:filename=solve.jfr,+ChessPuzzle.Solve#enabled=true,+ChessPuzzle.SlowNode#enabled=true ChessPuzzle
+//     jfr print --events "ChessPuzzle.*" solve.jfr
+// Disabled events are left out by the JIT, so they cost next to nothing.
+//
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ChessPuzzle.Solve")
+@Label("Solve Puzzle")
+@Category("Chess Puzzle")
+@Description("Solving one board, from the solve stage picking it up to its answer")
+@Enabled(false)
+class SolveEvent extends Event {
+
+  @Label("Board")
+  int board;
+
+  @Label("Moves")
+  int moves;
+
+  @Label("Verdict")
+  String verdict;
+
+  @Label("Source")
+  @Description("search, timeout, cache or duplicate")
+  String source;
+
+  @Label("Nodes")
+  long nodes;
+}
+
+// End
@@ -0,0 +1,196 @@
+// Filename: SolverServer.java
+//
+// Contains class SolverServer that keeps a warm solver running and answers puzzles sent over a socket
+//
+// Started with "java ChessPuzzle --serve <address>" after the other options, so the transposition
+// table, solution cache and tablebases stay loaded and the JIT stays warm between clients. The
+// address is a port number, which listens on the loopback interface only, or the path of a unix
+// domain socket. A client sends lines in the input.txt format and gets back one line per puzzle,
+// in order, exactly as it would appear in solution.txt. A line that cannot be parsed or solved gets
+// "Error: <reason>" back and the server goes on with the next one. Empty lines get no answer. Each answer is flushed as soon as it is
+// solved, so a client can stream puzzles in and read results while it is still sending.
+//
+// With --result-cache the server answers popular puzzles from memory, and with --report <s> it
+// prints the hit rate of that cache on stderr every s seconds.
+//
+// Every connection gets its own thread. Where the JVM has virtual threads they are used, so a
+// great many idle clients cost next to nothing, otherwise a cached thread pool is used.
+//
+//     printf '1 k 1 7 K 8 8 q 1 1\n' | nc localhost 5555
+//
+// This needs to be compiled with ChessPuzzle.java, PuzzleReader.java, Puzzle.java and Utilities.java.
+//
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+class SolverServer {
+
+  private String address; // port number or socket path
+  private Path socketFile; // the unix domain socket, null for TCP
+
+  // constructor
+  // Input: port number or socket path
+  public SolverServer(String address) {
+    this.address = address;
+  }
+
+  // Method to open the listening socket
+  // Input: none
+  // Output: returns the server channel
+  private ServerSocketChannel open() throws IOException {
+    ServerSocketChannel server;
+    SocketAddress bindTo;
+    if(address.matches("[0-9]+")) {
+      server = ServerSocketChannel.open(StandardProtocolFamily.INET);
+      bindTo = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+    }
+    else {
+      socketFile = Paths.get(address);
+      Files.deleteIfExists(socketFile); // left over from a server that was killed
+      server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+      bindTo = UnixDomainSocketAddress.of(socketFile);
+    }
+    server.bind(bindTo);
+    return server;
+  }
+
+  // Method to create the executor that runs one thread per connection
+  // Input: none
+  // Output: returns a virtual thread per task executor if the JVM has one, otherwise a cached thread pool
+  private static ExecutorService connectionExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+    catch(ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+  // Method to accept clients until the server is killed
+  // Input: none
+  // Output: void
+  public void run() {
+    ServerSocketChannel server = null;
+    try {
+      server = open();
+    }
+    catch(IOException e) {
+      Utilities.errExit("Cannot listen on " + address + ": " + e.getMessage());
+    }
+    if(socketFile != null) {
+      Path file = socketFile;
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          Files.deleteIfExists(file);
+        }
+        catch(IOException e) {
+          // nothing left to do about it
+        }
+      }));
+    }
+    System.err.println("Solving puzzles sent to " + address);
+    if(ChessPuzzle.results != null && ChessPuzzle.reportSeconds > 0) {
+      Thread reporter = new Thread(() -> {
+        try {
+          while(true) {
+            Thread.sleep(ChessPuzzle.reportSeconds * 1000L);
+            System.err.println(ChessPuzzle.results.describe());
+          }
+        }
+        catch(InterruptedException e) {
+          // the server is going down
+        }
+      }, "result-cache-report");
+      reporter.setDaemon(true);
+      reporter.start();
+    }
+    ExecutorService connections = connectionExecutor();
+    while(true) {
+      try {
+        SocketChannel client = server.accept();
+        connections.execute(() -> serve(client));
+      }
+      catch(IOException e) {
+        Utilities.errExit("Error while accepting a client: " + e.getMessage());
+      }
+    }
+  }
+
+  // Method to answer every puzzle a client sends
+  // Input: the connection
+  // Output: void
+  private void serve(SocketChannel client) {
+    try(SocketChannel channel = client;
+        BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.US_ASCII));
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.US_ASCII))) {
+      int boardNo = 1;
+      String line;
+      while((line = in.readLine()) != null) {
+        String answer = solveLine(line, boardNo);
+        if(answer == null) {
+          continue;
+        }
+        boardNo++;
+        out.write(answer);
+        out.newLine();
+        out.flush();
+      }
+    }
+    catch(IOException e) {
+      // the client went away, nothing to answer anymore
+    }
+  }
+
+  // Method to solve one line of a client
+  // Input: the line and its board number on this connection
+  // Output: returns the answer, or null for an empty line
+  public static String solveLine(String line, int boardNo) {
+    byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+    Puzzle puzzle;
+    try {
+      puzzle = PuzzleReader.parseLine(ByteBuffer.wrap(bytes), 0, bytes.length, boardNo, false);
+    }
+    catch(IllegalArgumentException e) {
+      return "Error: " + e.getMessage();
+    }
+    if(puzzle == null) {
+      return null;
+    }
+    // the batch stops at an unknown chesspiece, the server only turns the line down
+    for(int i = 0; i < puzzle.getCount(); i++) {
+      if("kqrbnpKQRBNP".indexOf(puzzle.getType(i)) < 0) {
+        return "Error: Cannot recognize chesspiece " + puzzle.getType(i);
+      }
+    }
+    try {
+      ChessPuzzle c = new ChessPuzzle(boardNo, puzzle.getMoves(), ChessPuzzle.boardSize);
+      c.setHead(puzzle.toList(c.getHead()));
+      if(puzzle.isInvalid()) {
+        c.setKnownInvalid();
+      }
+      c.validate();
+      c.solveBoard();
+      return c.getOutput();
+    }
+    catch(Exception e) {
+      return "Error: Error while performing operations (" + e + ")";
+    }
+  }
+}
+
+// End
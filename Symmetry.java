@@ -0,0 +1,136 @@
+// Filename: Symmetry.java
+//
+// Contains class Symmetry that maps a chessboard onto a canonical orientation
+//
+// Mirroring a board left to right never changes the answer of a puzzle. Without pawns, the
+// board can also be mirrored top to bottom and flipped along the diagonal, which gives the
+// 8 symmetries of the square. A transform is a bit mask of the three basic flips. The canonical
+// orientation is the transform with the smallest Zobrist key, so all the mirror images of a
+// puzzle share one key. Only verdicts are shared that way: the move the search prints depends on the
+// order it tries the chesspieces and squares in, which a transform does not keep, so a solution with
+// a move is only reused for the exact same puzzle (see exactKey).
+//
+// This needs to be compiled with Zobrist.java, Node.java and Utilities.java.
+//
+
+class Symmetry {
+
+  public static final int IDENTITY = 0;
+  public static final int MIRROR_COL = 1; // col becomes board_size+1-col
+  public static final int MIRROR_ROW = 2; // row becomes board_size+1-row
+  public static final int TRANSPOSE = 4; // row and col are swapped, after the mirrors
+
+  // Input: transform, row and col of a square and the board size
+  // Output: returns the row of the square after the transform
+  public static int transformRow(int transform, int row, int col, int board_size) {
+    if((transform & MIRROR_ROW) != 0) {
+      row = board_size + 1 - row;
+    }
+    if((transform & MIRROR_COL) != 0) {
+      col = board_size + 1 - col;
+    }
+    if((transform & TRANSPOSE) != 0) {
+      return col;
+    }
+    return row;
+  }
+
+  // Input: transform, row and col of a square and the board size
+  // Output: returns the col of the square after the transform
+  public static int transformCol(int transform, int row, int col, int board_size) {
+    if((transform & MIRROR_ROW) != 0) {
+      row = board_size + 1 - row;
+    }
+    if((transform & MIRROR_COL) != 0) {
+      col = board_size + 1 - col;
+    }
+    if((transform & TRANSPOSE) != 0) {
+      return row;
+    }
+    return col;
+  }
+
+  // Method to count the transforms that are valid for a board
+  // Pawns only move in one direction, so with pawns only the left to right mirror is allowed
+  // Input: list
+  // Output: returns the number of valid transforms, they are numbered from 0
+  public static int transformCount(Node list) {
+    Node piece = list.getNext();
+    while(piece != null) {
+      if(piece.getChessPiece() instanceof Pawn) {
+        return 2;
+      }
+      piece = piece.getNext();
+    }
+    return 8;
+  }
+
+  // Method to hash a board as it looks after the transform
+  // Input: list, transform and board size
+  // Output: returns the Zobrist key of the transformed board
+  public static long hash(Node list, int transform, int board_size) {
+    long key = 0;
+    Node piece = list.getNext();
+    while(piece != null) {
+      int row = piece.getRow();
+      int col = piece.getCol();
+      key ^= Zobrist.squareKey(Utilities.returnChessPieceType(piece),
+                               transformRow(transform, row, col, board_size),
+                               transformCol(transform, row, col, board_size));
+      piece = piece.getNext();
+    }
+    return key;
+  }
+
+  // Method to find the transform that takes the board to its canonical orientation
+  // Input: list and board size
+  // Output: returns the valid transform with the smallest key
+  public static int canonicalTransform(Node list, int board_size) {
+    int best = IDENTITY;
+    long bestKey = hash(list, IDENTITY, board_size);
+    int count = transformCount(list);
+    for(int transform = 1; transform < count; transform++) {
+      long key = hash(list, transform, board_size);
+      if(key < bestKey) {
+        best = transform;
+        bestKey = key;
+      }
+    }
+    return best;
+  }
+
+  // Input: list and board size
+  // Output: returns the key of the board in its canonical orientation
+  public static long canonicalHash(Node list, int board_size) {
+    long bestKey = hash(list, IDENTITY, board_size);
+    int count = transformCount(list);
+    for(int transform = 1; transform < count; transform++) {
+      bestKey = Math.min(bestKey, hash(list, transform, board_size));
+    }
+    return bestKey;
+  }
+
+  // Method to compute the key of a whole puzzle in its canonical orientation, that is the position
+  // together with the number of moves, the side that has to checkmate (odd moves is white) and the board size
+  // Input: list, number of moves, the canonical transform and board size
+  // Output: returns the key
+  public static long puzzleKey(Node list, int moves, int transform, int board_size) {
+    return hash(list, transform, board_size) ^ Zobrist.movesKey(moves) ^ Zobrist.sideKey(moves%2 == 1) ^ Zobrist.sizeKey(board_size);
+  }
+
+  // Method to compute the key of a puzzle exactly as it was given, in its own orientation and with
+  // its chesspieces in the order of the list, since both decide which move the search finds first
+  // Input: list, number of moves and board size
+  // Output: returns the key
+  public static long exactKey(Node list, int moves, int board_size) {
+    long key = 0;
+    Node piece = list.getNext();
+    while(piece != null) {
+      key = key*0x9e3779b97f4a7c15L + Zobrist.squareKey(Utilities.returnChessPieceType(piece), piece.getRow(), piece.getCol());
+      piece = piece.getNext();
+    }
+    return key ^ Zobrist.movesKey(moves) ^ Zobrist.sideKey(moves%2 == 1) ^ Zobrist.sizeKey(board_size);
+  }
+}
+
+// End
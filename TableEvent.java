@@ -0,0 +1,36 @@
+// Filename: TableEvent.java
+//
+// Contains class TableEvent, the flight recorder event of allocating or releasing the
+// transposition table, which for a big table takes long enough to show up as a pause
+//
+// Off unless a recording turns it on, see SolveEvent.
+//
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("ChessPuzzle.Table")
+@Label("Transposition Table")
+@Category("Chess Puzzle")
+@Description("Allocating or releasing the transposition table")
+@Enabled(false)
+class TableEvent extends Event {
+
+  @Label("Action")
+  @Description("allocate or release")
+  String action;
+
+  @Label("Size")
+  @DataAmount
+  long bytes;
+
+  @Label("Off Heap")
+  boolean offHeap;
+}
+
+// End
@@ -0,0 +1,295 @@
+// Filename: Tablebase.java
+//
+// Contains class Tablebase that answers positions with few chesspieces from a precomputed table
+//
+// A table covers one set of material without pawns, named with white's pieces first, for example
+// KQK or KQKR. Colors are irrelevant without pawns, so a position where black has the queen is
+// looked up in KQK with the colors swapped. The table file holds a 16 byte header followed by one
+// byte for every (side to move, square of each chesspiece), with squares numbered
+// (row-1)*8 + (col-1) and the first chesspiece in the lowest digit of the index:
+//     0          draw
+//     1          illegal position
+//     2 + d      the side to move is checkmated after d more plies (d even) or checkmates in d plies (d odd)
+// The values follow the rules of the solver rather than those of chess: a side that has no legal move
+// without being checkmated (stalemate) has lost as well, but only when the search goes on after it,
+// since the last position of a search has to be a real checkmate. So a stalemate is stored as a
+// checkmate 2 plies later, which a search with 0 plies left does not reach.
+// Files are memory mapped, so probing a table costs a single read.
+//
+// This needs to be compiled with Node.java, Utilities.java and TranspositionTable.java.
+//
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+class Tablebase {
+
+  public static final int MAGIC = 0x43505432; // "CPT2", tables with stalemates stored as draws were "CPTB"
+  public static final int HEADER_BYTES = 16;
+  public static final int MAX_PIECES = 4; // 2 * 64^4 entries is the most an int index can address comfortably
+  public static final byte DRAW = 0;
+  public static final byte ILLEGAL = 1;
+  public static final int SQUARES = 64; // tables are only built for the 8x8 board
+  private static final String ORDER = "KQRBN"; // order of the chesspieces within one side of a name
+
+  private static HashMap<String, Tablebase> tables = new HashMap<String, Tablebase>(); // loaded tables by name
+  private static int largest = 0; // number of chesspieces in the largest loaded table
+
+  private String name; // material of the table, like KQKR
+  private char[] pieces; // chesspiece of each slot of the index, lowercase for white like everywhere else
+  private MappedByteBuffer data; // the values, without the header
+
+  // constructor, maps a table file
+  // Input: name of the material and the file
+  public Tablebase(String name, File file) throws IOException {
+    this.name = name;
+    this.pieces = piecesOf(name);
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    long size = channel.size();
+    MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    channel.close();
+    if(size != HEADER_BYTES + entries(pieces.length) || map.getInt(0) != MAGIC || map.getInt(4) != pieces.length) {
+      throw new IOException("Not a tablebase for " + name + ": " + file);
+    }
+    map.position(HEADER_BYTES);
+    this.data = map.slice();
+  }
+
+  // return the material of the table
+  public String getName() {
+    return this.name;
+  }
+
+  // return the chesspiece of each slot of the index
+  public char[] getPieces() {
+    return this.pieces;
+  }
+
+  // Input: index of a position
+  // Output: returns the stored value of the position
+  public int value(int index) {
+    return data.get(index) & 0xff;
+  }
+
+  // Input: number of chesspieces
+  // Output: returns the number of entries of a table with that many chesspieces
+  public static int entries(int pieceCount) {
+    return 2 << (6*pieceCount);
+  }
+
+  // Method to split a name like KQKR into the chesspiece of each slot
+  // Input: name of the material
+  // Output: returns white's chesspieces in lowercase followed by black's in uppercase
+  public static char[] piecesOf(String name) {
+    int blackKing = name.indexOf('K', 1);
+    if(name.charAt(0) != 'K' || blackKing < 0) {
+      Utilities.errExit("Cannot recognize tablebase material " + name);
+    }
+    char[] pieces = name.toCharArray();
+    for(int i = 0; i < blackKing; i++) {
+      pieces[i] = Character.toLowerCase(pieces[i]);
+    }
+    return pieces;
+  }
+
+  // Method to write one side of a material in the order of the names
+  // Input: the chesspieces of one side, in either case
+  // Output: returns them in uppercase, king first, then queens, rooks, bishops and knights
+  public static String sortSide(String side) {
+    String sorted = "";
+    side = side.toUpperCase();
+    for(int i = 0; i < ORDER.length(); i++) {
+      for(int j = 0; j < side.length(); j++) {
+        if(side.charAt(j) == ORDER.charAt(i)) {
+          sorted += ORDER.charAt(i);
+        }
+      }
+    }
+    return sorted;
+  }
+
+  // Method to decide if the colors of a material have to be swapped to find its table
+  // The stronger side (more chesspieces, then better chesspieces) is always white in the names
+  // Input: sorted sides of white and black
+  // Output: returns true if black is the stronger side
+  public static boolean needsSwap(String white, String black) {
+    if(white.length() != black.length()) {
+      return black.length() > white.length();
+    }
+    for(int i = 0; i < white.length(); i++) {
+      int w = ORDER.indexOf(white.charAt(i));
+      int b = ORDER.indexOf(black.charAt(i));
+      if(w != b) {
+        return b < w;
+      }
+    }
+    return false;
+  }
+
+  // Method to match the chesspieces of a position to the slots of a table
+  // Input: the table's slots, the chesspieces of the position and whether the colors are swapped
+  // Output: returns for each slot the position's chesspiece in it, or null if they do not match
+  public static int[] slotMap(char[] slots, char[] types, int count, boolean swap) {
+    if(slots.length != count) {
+      return null;
+    }
+    int[] map = new int[slots.length];
+    boolean[] used = new boolean[count];
+    for(int s = 0; s < slots.length; s++) {
+      char wanted = slots[s];
+      if(swap) {
+        wanted = Character.isLowerCase(wanted) ? Character.toUpperCase(wanted) : Character.toLowerCase(wanted);
+      }
+      map[s] = -1;
+      for(int j = 0; j < count; j++) {
+        if(!used[j] && types[j] == wanted) {
+          map[s] = j;
+          used[j] = true;
+          break;
+        }
+      }
+      if(map[s] < 0) {
+        return null;
+      }
+    }
+    return map;
+  }
+
+  // Method to find the name of the table that holds a material
+  // Input: the chesspieces of a position and how many there are
+  // Output: returns the name, with the stronger side as white
+  public static String nameOf(char[] types, int count) {
+    String white = "";
+    String black = "";
+    for(int i = 0; i < count; i++) {
+      if(Character.isLowerCase(types[i])) {
+        white += types[i];
+      }
+      else {
+        black += types[i];
+      }
+    }
+    white = sortSide(white);
+    black = sortSide(black);
+    if(needsSwap(white, black)) {
+      return black + white;
+    }
+    return white + black;
+  }
+
+  // Input: the chesspieces of a position and how many there are
+  // Output: returns true if the colors have to be swapped to look the position up
+  public static boolean swapOf(char[] types, int count) {
+    String white = "";
+    String black = "";
+    for(int i = 0; i < count; i++) {
+      if(Character.isLowerCase(types[i])) {
+        white += types[i];
+      }
+      else {
+        black += types[i];
+      }
+    }
+    return needsSwap(sortSide(white), sortSide(black));
+  }
+
+  // Method to compute the index of a position in a table
+  // Input: slot map from slotMap, the squares of the position's chesspieces and the side to move in the table's colors
+  // Output: returns the index
+  public static int index(int[] map, int[] squares, boolean whiteToMove) {
+    int index = 0;
+    for(int s = map.length-1; s >= 0; s--) {
+      index = index*SQUARES + squares[map[s]];
+    }
+    if(!whiteToMove) {
+      index += 1 << (6*map.length);
+    }
+    return index;
+  }
+
+  // Method to register a table so that probes find it
+  // Input: the table
+  // Output: void
+  public static synchronized void register(Tablebase table) {
+    tables.put(table.getName(), table);
+    largest = Math.max(largest, table.getPieces().length);
+  }
+
+  // Method to load every table file (NAME.tb) of a directory
+  // Input: directory name
+  // Output: void, exits if the directory has no tables
+  public static void loadDirectory(String directory) {
+    File[] files = new File(directory).listFiles();
+    if(files == null) {
+      Utilities.errExit("Cannot read tablebase directory " + directory);
+    }
+    try {
+      for(int i = 0; i < files.length; i++) {
+        String fileName = files[i].getName();
+        if(fileName.endsWith(".tb")) {
+          register(new Tablebase(fileName.substring(0, fileName.length()-3), files[i]));
+        }
+      }
+    }
+    catch(IOException e) {
+      Utilities.errExit("Cannot load tablebase: " + e.getMessage());
+    }
+  }
+
+  // return true if at least one table is loaded
+  public static boolean isLoaded() {
+    return largest > 0;
+  }
+
+  // Method to look up the value of a position
+  // Input: the chesspieces, their squares, how many there are and the side to move
+  // Output: returns the stored value, or -1 if no table holds the position
+  public static int probe(char[] types, int[] squares, int count, boolean whiteToMove) {
+    Tablebase table = tables.get(nameOf(types, count));
+    if(table == null) {
+      return -1;
+    }
+    boolean swap = swapOf(types, count);
+    int[] map = slotMap(table.getPieces(), types, count, swap);
+    if(map == null) {
+      return -1;
+    }
+    return table.value(index(map, squares, whiteToMove != swap));
+  }
+
+  // Method to answer a node of the solver's search from the tables
+  // The side that made the last move of the search has to checkmate, so when moves is odd
+  // the side to move has to win and when it is even it has to lose, either way within moves plies
+  // Input: list, the side to move and the number of moves left
+  // Output: returns TranspositionTable.SOLUTION, NO_SOLUTION or UNKNOWN if no table holds the position
+  public static int probeMate(Node list, boolean whiteToMove, int moves) {
+    char[] types = new char[largest];
+    int[] squares = new int[largest];
+    int count = 0;
+    Node piece = list.getNext();
+    while(piece != null) {
+      char type = Utilities.returnChessPieceType(piece);
+      if(count == largest || type == 'p' || type == 'P') {
+        return TranspositionTable.UNKNOWN;
+      }
+      types[count] = type;
+      squares[count] = (piece.getRow()-1)*8 + (piece.getCol()-1);
+      count++;
+      piece = piece.getNext();
+    }
+    int value = probe(types, squares, count, whiteToMove);
+    if(value < 0 || value == ILLEGAL) {
+      return TranspositionTable.UNKNOWN;
+    }
+    int plies = value - 2;
+    if(value != DRAW && plies <= moves && plies%2 == moves%2) {
+      return TranspositionTable.SOLUTION;
+    }
+    return TranspositionTable.NO_SOLUTION;
+  }
+}
+
+// End
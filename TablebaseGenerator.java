@@ -0,0 +1,413 @@
+// Filename: TablebaseGenerator.java
+//
+// Contains class TablebaseGenerator that builds the distance to mate tables read by Tablebase
+//
+// The tables are built by retrograde analysis. First every position is checked once: illegal
+// positions are marked, checkmates get distance 0, stalemates distance 2 (see Tablebase), and every
+// other position counts its legal moves. Captures leave the table, so they are answered right away from the smaller tables,
+// which are generated first. Then the positions are processed by distance: every position
+// that loses in d plies makes the positions one move before it win in d+1, and every position
+// that wins in d plies takes one move away from the positions before it. A position whose moves
+// all lead to wins for the other side loses in d+1. What is left at the end is a draw.
+// Positions one move before are found by moving the chesspieces backwards, which for kings,
+// queens, rooks, bishops and knights is the same as moving them forwards.
+//
+// Usage: java TablebaseGenerator <directory> <material>...
+//     for example java TablebaseGenerator tb KQK KRK KBNK KQKR
+//
+// This needs to be compiled with Tablebase.java and Utilities.java.
+//
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+class TablebaseGenerator {
+
+  private static final int[] kingRows = {-1, -1, 0, 1, 0, 1, 1, -1}; // king steps, same as the King class
+  private static final int[] kingCols = {0, -1, -1, -1, 1, 1, 0, 1};
+  private static final int[] knightRows = {-1, 1, -1, 1, -2, -2, 2, 2}; // knight jumps, same as the Knight class
+  private static final int[] knightCols = {-2, -2, 2, 2, -1, 1, -1, 1};
+
+  private char[] pieces; // chesspiece of each slot, lowercase for white
+  private int count; // number of chesspieces
+  private int half; // number of entries for one side to move, 64^count
+  private int whiteKing; // slot of the white king
+  private int blackKing; // slot of the black king
+  private byte[] values; // the table that is being built, encoded like in Tablebase
+  private byte[] moveCount; // moves of each position that are not known to lose yet
+  private byte[] captureWin; // 1 + fastest win through a capture, 0 if there is none
+  private byte[] captureLoss; // 1 + slowest loss through a capture, 0 if there is none
+  private Tablebase[] subTables; // table reached by capturing the chesspiece in each slot
+  private int[][] subMaps; // slot map into that table
+  private boolean[] subSwaps; // whether the colors are swapped in that table
+  private int[] squares; // scratch squares of the position being looked at
+
+  // constructor
+  // Input: the chesspiece of each slot and the tables reached by captures
+  public TablebaseGenerator(char[] pieces, Tablebase[] subTables) {
+    this.pieces = pieces;
+    this.count = pieces.length;
+    this.half = 1 << (6*count);
+    this.subTables = subTables;
+    this.subMaps = new int[count][];
+    this.subSwaps = new boolean[count];
+    for(int i = 0; i < count; i++) {
+      if(pieces[i] == 'k') {
+        whiteKing = i;
+      }
+      else if(pieces[i] == 'K') {
+        blackKing = i;
+      }
+      else {
+        char[] rest = remove(pieces, i);
+        subSwaps[i] = Tablebase.swapOf(rest, rest.length);
+        subMaps[i] = Tablebase.slotMap(subTables[i].getPieces(), rest, rest.length, subSwaps[i]);
+      }
+    }
+    this.squares = new int[count];
+  }
+
+  // Input: array and the slot to drop
+  // Output: returns a copy of the array without that slot
+  private static char[] remove(char[] pieces, int slot) {
+    char[] rest = new char[pieces.length-1];
+    for(int i = 0, j = 0; i < pieces.length; i++) {
+      if(i != slot) {
+        rest[j++] = pieces[i];
+      }
+    }
+    return rest;
+  }
+
+  // Input: the squares of the chesspieces and the captured slot
+  // Output: returns the same squares without that slot, in the order of remove
+  private static int[] remove(int[] squares, int slot) {
+    int[] rest = new int[squares.length-1];
+    for(int i = 0, j = 0; i < squares.length; i++) {
+      if(i != slot) {
+        rest[j++] = squares[i];
+      }
+    }
+    return rest;
+  }
+
+  // Method to split an index into the squares of the chesspieces
+  // Input: index
+  // Output: void, fills squares and returns the occupied squares as a bit mask
+  private long decode(int index) {
+    long occupied = 0;
+    int rest = index & (half-1);
+    for(int i = 0; i < count; i++) {
+      squares[i] = rest & 63;
+      occupied |= 1L << squares[i];
+      rest >>>= 6;
+    }
+    return occupied;
+  }
+
+  // Input: squares of the chesspieces and the side to move
+  // Output: returns the index of the position
+  private int encode(int[] squares, boolean whiteToMove) {
+    int index = 0;
+    for(int i = count-1; i >= 0; i--) {
+      index = index*64 + squares[i];
+    }
+    if(!whiteToMove) {
+      index += half;
+    }
+    return index;
+  }
+
+  // Method to check if a chesspiece attacks a square, with sliders stopped by occupied squares
+  // Input: chesspiece type, its square, the target square and the occupied squares
+  // Output: returns true if it attacks the target
+  private static boolean attacks(char type, int from, int to, long occupied) {
+    int dr = to/8 - from/8;
+    int dc = to%8 - from%8;
+    char upper = Character.toUpperCase(type);
+    if(upper == 'K') {
+      return Math.abs(dr) <= 1 && Math.abs(dc) <= 1 && from != to;
+    }
+    if(upper == 'N') {
+      return (Math.abs(dr) == 1 && Math.abs(dc) == 2) || (Math.abs(dr) == 2 && Math.abs(dc) == 1);
+    }
+    boolean straight = (dr == 0) != (dc == 0);
+    boolean diagonal = dr != 0 && Math.abs(dr) == Math.abs(dc);
+    if(!((upper == 'R' && straight) || (upper == 'B' && diagonal) || (upper == 'Q' && (straight || diagonal)))) {
+      return false;
+    }
+    int step = Integer.signum(dr)*8 + Integer.signum(dc);
+    for(int square = from + step; square != to; square += step) {
+      if((occupied & (1L << square)) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Method to check if a square is attacked by one side
+  // Input: square, color of the attackers, squares of the chesspieces, occupied squares and a captured slot to skip (or -1)
+  // Output: returns true if any chesspiece of that color attacks the square
+  private boolean isAttacked(int square, boolean byWhite, int[] squares, long occupied, int captured) {
+    for(int i = 0; i < count; i++) {
+      if(i != captured && Character.isLowerCase(pieces[i]) == byWhite && attacks(pieces[i], squares[i], square, occupied)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Method to list the squares a chesspiece can reach, stopping at (and including) the first occupied
+  // square of each ray. Used forwards for moves and backwards for the positions before
+  // Input: slot, squares of the chesspieces, occupied squares and an array to fill
+  // Output: returns the number of squares filled in
+  private int reachable(int slot, int[] squares, long occupied, int[] targets) {
+    char upper = Character.toUpperCase(pieces[slot]);
+    int row = squares[slot]/8;
+    int col = squares[slot]%8;
+    int n = 0;
+    if(upper == 'K' || upper == 'N') {
+      int[] rows = upper == 'K' ? kingRows : knightRows;
+      int[] cols = upper == 'K' ? kingCols : knightCols;
+      for(int i = 0; i < rows.length; i++) {
+        int r = row + rows[i];
+        int c = col + cols[i];
+        if(r >= 0 && r < 8 && c >= 0 && c < 8) {
+          targets[n++] = r*8 + c;
+        }
+      }
+      return n;
+    }
+    for(int i = 0; i < kingRows.length; i++) {
+      boolean straight = kingRows[i] == 0 || kingCols[i] == 0;
+      if((upper == 'R' && !straight) || (upper == 'B' && straight)) {
+        continue;
+      }
+      int r = row + kingRows[i];
+      int c = col + kingCols[i];
+      while(r >= 0 && r < 8 && c >= 0 && c < 8) {
+        targets[n++] = r*8 + c;
+        if((occupied & (1L << (r*8 + c))) != 0) {
+          break;
+        }
+        r += kingRows[i];
+        c += kingCols[i];
+      }
+    }
+    return n;
+  }
+
+  // Method to look at every position once: mark the illegal ones and the checkmates,
+  // count the moves of the others and answer their captures from the smaller tables
+  // Input: none
+  // Output: returns the largest distance set so far
+  private int initialize() {
+    int[] targets = new int[32];
+    int[] moved = new int[count];
+    int maxLevel = 0;
+    for(int index = 0; index < 2*half; index++) {
+      long occupied = decode(index);
+      boolean whiteToMove = index < half;
+      int myKing = whiteToMove ? whiteKing : blackKing;
+      int theirKing = whiteToMove ? blackKing : whiteKing;
+      // two chesspieces on one square or the side that just moved left its king in check
+      if(Long.bitCount(occupied) != count || isAttacked(squares[theirKing], whiteToMove, squares, occupied, -1)) {
+        values[index] = Tablebase.ILLEGAL;
+        continue;
+      }
+      int legal = 0;
+      int fastestWin = 0;
+      int slowestLoss = 0;
+      for(int slot = 0; slot < count; slot++) {
+        if(Character.isLowerCase(pieces[slot]) != whiteToMove) {
+          continue;
+        }
+        int n = reachable(slot, squares, occupied, targets);
+        for(int t = 0; t < n; t++) {
+          int target = targets[t];
+          int captured = -1;
+          if((occupied & (1L << target)) != 0) {
+            for(int j = 0; j < count; j++) {
+              if(squares[j] == target) {
+                captured = j;
+              }
+            }
+            if(Character.isLowerCase(pieces[captured]) == whiteToMove || captured == theirKing) {
+              continue;
+            }
+          }
+          System.arraycopy(squares, 0, moved, 0, count);
+          moved[slot] = target;
+          long after = (occupied & ~(1L << squares[slot])) | (1L << target);
+          if(isAttacked(moved[myKing], !whiteToMove, moved, after, captured)) {
+            continue;
+          }
+          legal++;
+          if(captured < 0) {
+            continue;
+          }
+          // the capture leaves this table, so its answer comes from the smaller one
+          int[] rest = remove(moved, captured);
+          int value = subTables[captured].value(Tablebase.index(subMaps[captured], rest, whiteToMove == subSwaps[captured]));
+          if(value >= 2 && (value-2)%2 == 0) {
+            int win = value - 2 + 1;
+            if(fastestWin == 0 || win + 1 < fastestWin) {
+              fastestWin = win + 1;
+            }
+          }
+          else if(value >= 2) {
+            legal--;
+            slowestLoss = Math.max(slowestLoss, value - 2 + 1 + 1);
+          }
+        }
+      }
+      captureWin[index] = (byte) fastestWin;
+      captureLoss[index] = (byte) slowestLoss;
+      moveCount[index] = (byte) legal;
+      if(legal == 0) {
+        if(slowestLoss > 0) {
+          // every move is a capture that loses
+          values[index] = (byte) (slowestLoss - 1 + 2);
+          maxLevel = Math.max(maxLevel, slowestLoss - 1);
+        }
+        else if(isAttacked(squares[myKing], !whiteToMove, squares, occupied, -1)) {
+          values[index] = 2; // checkmated
+        }
+        else {
+          // stalemate, which the solver counts as lost once it is not the last position of the search
+          values[index] = 2 + 2;
+          maxLevel = Math.max(maxLevel, 2);
+        }
+      }
+      else if(fastestWin > 0) {
+        maxLevel = Math.max(maxLevel, fastestWin - 1);
+      }
+    }
+    return maxLevel;
+  }
+
+  // Method to run the retrograde analysis over all the distances
+  // Input: none
+  // Output: returns the table values
+  public byte[] generate() {
+    values = new byte[2*half];
+    moveCount = new byte[2*half];
+    captureWin = new byte[2*half];
+    captureLoss = new byte[2*half];
+    int maxLevel = initialize();
+    int[] targets = new int[32];
+    int[] before = new int[count];
+    for(int level = 0; level <= maxLevel && level < 253; level++) {
+      for(int index = 0; index < 2*half; index++) {
+        int value = values[index] & 0xff;
+        if(value == Tablebase.DRAW && (captureWin[index] & 0xff) == level + 1) {
+          values[index] = (byte) (level + 2);
+          value = level + 2;
+        }
+        if(value != level + 2) {
+          continue;
+        }
+        long occupied = decode(index);
+        boolean whiteToMove = index < half;
+        // the side that is not to move made the last move, so take each of its chesspieces back
+        for(int slot = 0; slot < count; slot++) {
+          if(Character.isLowerCase(pieces[slot]) == whiteToMove) {
+            continue;
+          }
+          int n = reachable(slot, squares, occupied, targets);
+          for(int t = 0; t < n; t++) {
+            if((occupied & (1L << targets[t])) != 0) {
+              continue;
+            }
+            System.arraycopy(squares, 0, before, 0, count);
+            before[slot] = targets[t];
+            int previous = encode(before, !whiteToMove);
+            if(values[previous] != Tablebase.DRAW) {
+              continue;
+            }
+            if(level%2 == 0) {
+              // we lose here, so the move before wins
+              values[previous] = (byte) (level + 1 + 2);
+              maxLevel = Math.max(maxLevel, level + 1);
+            }
+            else if(--moveCount[previous] == 0) {
+              // all its moves lose, and the slowest loss decides the distance
+              int loss = Math.max(level + 1, (captureLoss[previous] & 0xff) - 1);
+              values[previous] = (byte) (loss + 2);
+              maxLevel = Math.max(maxLevel, loss);
+            }
+          }
+        }
+      }
+    }
+    return values;
+  }
+
+  // Method to write a finished table
+  // Input: file and the values
+  // Output: void
+  private static void write(File file, byte[] values, int count) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                           StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    ByteBuffer header = ByteBuffer.allocate(Tablebase.HEADER_BYTES);
+    header.putInt(Tablebase.MAGIC);
+    header.putInt(count);
+    header.rewind();
+    channel.write(header);
+    ByteBuffer body = ByteBuffer.wrap(values);
+    while(body.hasRemaining()) {
+      channel.write(body);
+    }
+    channel.close();
+  }
+
+  // Method to make sure a table exists, building the smaller ones it needs first
+  // Input: directory of the tables and the material
+  // Output: returns the table, mapped from its file
+  public static Tablebase build(File directory, String material) throws IOException {
+    char[] pieces = Tablebase.piecesOf(material);
+    String name = Tablebase.nameOf(pieces, pieces.length);
+    if(pieces.length > Tablebase.MAX_PIECES || name.indexOf('P') >= 0) {
+      Utilities.errExit("Tablebases are only built for up to " + Tablebase.MAX_PIECES + " chesspieces without pawns: " + material);
+    }
+    File file = new File(directory, name + ".tb");
+    if(!file.exists()) {
+      pieces = Tablebase.piecesOf(name);
+      Tablebase[] subTables = new Tablebase[pieces.length];
+      for(int i = 0; i < pieces.length; i++) {
+        if(pieces[i] != 'k' && pieces[i] != 'K') {
+          char[] rest = remove(pieces, i);
+          subTables[i] = build(directory, Tablebase.nameOf(rest, rest.length));
+        }
+      }
+      long start = System.currentTimeMillis();
+      byte[] values = new TablebaseGenerator(pieces, subTables).generate();
+      write(file, values, pieces.length);
+      System.out.println("Generated " + name + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+    Tablebase table = new Tablebase(name, file);
+    Tablebase.register(table);
+    return table;
+  }
+
+  // main method
+  public static void main(String[] args) {
+    if(args.length < 2) {
+      Utilities.errExit("Usage: java TablebaseGenerator <directory> <material>...");
+    }
+    File directory = new File(args[0]);
+    directory.mkdirs();
+    try {
+      for(int i = 1; i < args.length; i++) {
+        build(directory, args[i].toUpperCase());
+      }
+    }
+    catch(IOException e) {
+      Utilities.errExit("Cannot write tablebase: " + e.getMessage());
+    }
+  }
+}
+
+// End
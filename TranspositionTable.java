@@ -0,0 +1,125 @@
+// Filename: TranspositionTable.java
+//
+// Contains class TranspositionTable that remembers the result of positions the solver has already searched
+//
+// The table has a fixed size given in MB and is split into slabs of ByteBuffers. With offHeap set,
+// the slabs are direct buffers, so the garbage collector only sees a handful of small buffer
+// objects no matter how big the table is. Each entry is 16 bytes: the key XORed with the data
+// and the data itself, so an entry that is torn by two concurrent writes simply does not match.
+//
+// This needs to be compiled with TableEvent.java and Utilities.java.
+//
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+class TranspositionTable {
+
+  public static final int UNKNOWN = -1; // probe did not find the position
+  public static final int NO_SOLUTION = 0; // the search below the position found no solution
+  public static final int SOLUTION = 1; // the search below the position found a solution
+
+  private static final int ENTRY_BYTES = 16; // key ^ data and data, 8 bytes each
+  private static final int SLAB_SHIFT = 26; // 64M entries of 16 bytes = 1GB per slab
+
+  private ByteBuffer[] slabs; // the actual storage
+  private long entries; // number of entries, always a power of two
+  private boolean offHeap; // whether the slabs live outside of the java heap
+
+  // constructor
+  // Input: size of the table in MB and whether it should be allocated outside of the heap
+  public TranspositionTable(int megabytes, boolean offHeap) {
+    if(megabytes <= 0) {
+      Utilities.errExit("Transposition table size must be positive");
+    }
+    TableEvent event = new TableEvent();
+    event.begin();
+    this.offHeap = offHeap;
+    // round the number of entries down to a power of two so that the index is a simple mask
+    this.entries = Long.highestOneBit((long) megabytes * 1024 * 1024 / ENTRY_BYTES);
+    long slabEntries = Math.min(entries, 1L << SLAB_SHIFT);
+    this.slabs = new ByteBuffer[(int) (entries / slabEntries)];
+    for(int i = 0; i < slabs.length; i++) {
+      if(offHeap) {
+        slabs[i] = ByteBuffer.allocateDirect((int) (slabEntries * ENTRY_BYTES));
+      }
+      else {
+        slabs[i] = ByteBuffer.allocate((int) (slabEntries * ENTRY_BYTES));
+      }
+    }
+    commit(event, "allocate");
+  }
+
+  // Method to record an allocation or release of the table for the flight recorder
+  // Input: the event, begun before the work, and what was done
+  // Output: void
+  private void commit(TableEvent event, String action) {
+    event.end();
+    if(event.shouldCommit()) {
+      event.action = action;
+      event.bytes = entries * ENTRY_BYTES;
+      event.offHeap = offHeap;
+      event.commit();
+    }
+  }
+
+  // Method to look up a position
+  // Input: 64 bit key of the position
+  // Output: returns SOLUTION, NO_SOLUTION or UNKNOWN if the position is not in the table
+  public int probe(long key) {
+    long index = key & (entries-1);
+    ByteBuffer slab = slabs[(int) (index >>> SLAB_SHIFT)];
+    int offset = (int) (index & ((1L << SLAB_SHIFT) - 1)) * ENTRY_BYTES;
+    long check = slab.getLong(offset);
+    long data = slab.getLong(offset + 8);
+    // an empty entry is all zeros, so the data always has its lowest bit set
+    if((data & 1) == 0 || (check ^ data) != key) {
+      return UNKNOWN;
+    }
+    return (int) (data >>> 1);
+  }
+
+  // Method to store the result of a position, replacing whatever was in its entry
+  // Input: 64 bit key of the position and whether a solution was found below it
+  // Output: void, just store
+  public void store(long key, boolean solved) {
+    long index = key & (entries-1);
+    ByteBuffer slab = slabs[(int) (index >>> SLAB_SHIFT)];
+    int offset = (int) (index & ((1L << SLAB_SHIFT) - 1)) * ENTRY_BYTES;
+    long data = ((long) (solved ? SOLUTION : NO_SOLUTION) << 1) | 1;
+    slab.putLong(offset, key ^ data);
+    slab.putLong(offset + 8, data);
+  }
+
+  // Method to give the memory back once a batch is done
+  // Direct buffers are normally freed only when the garbage collector finds them,
+  // so we run their cleaner ourselves when the JVM allows it
+  // Input: none
+  // Output: void, the table cannot be used afterwards
+  public void release() {
+    if(slabs == null) {
+      return;
+    }
+    TableEvent event = new TableEvent();
+    event.begin();
+    if(offHeap) {
+      try {
+        Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+        field.setAccessible(true);
+        Object unsafe = field.get(null);
+        Method invokeCleaner = unsafe.getClass().getMethod("invokeCleaner", ByteBuffer.class);
+        for(int i = 0; i < slabs.length; i++) {
+          invokeCleaner.invoke(unsafe, slabs[i]);
+        }
+      }
+      catch(Exception e) {
+        // Nothing to do. The garbage collector will free the slabs later
+      }
+    }
+    slabs = null;
+    commit(event, "release");
+  }
+}
+
+// End
@@ -0,0 +1,85 @@
+// Filename: Zobrist.java
+//
+// Contains class Zobrist that computes 64 bit hash keys for a chessboard list
+// Each (chesspiece type, square) pair gets a fixed random number and the key of a board
+// is the XOR of the numbers of all the chesspieces on it, so the order of the list does not matter
+//
+// This needs to be compiled with Node.java and Utilities.java.
+//
+
+import java.util.Random;
+
+class Zobrist {
+
+  public static final int MAX_BOARD_SIZE = 16; // largest board we create keys for
+  private static final String pieceTypes = "kqrbnpKQRBNP"; // index of each chesspiece type in the key table
+  private static final long[][] pieceKeys = new long[pieceTypes.length()][(MAX_BOARD_SIZE+1)*(MAX_BOARD_SIZE+1)];
+  private static final long[] movesKeys = new long[64]; // keys for the number of moves left
+  private static final long whiteKey; // key for searches where white has to checkmate
+  private static final long blackKey; // key for searches where black has to checkmate
+  private static final long[] sizeKeys = new long[MAX_BOARD_SIZE+1]; // keys for the board size
+
+  // The random numbers come from a fixed seed, so a key means the same position
+  // in every run. Keys that are written to a file depend on it.
+  static {
+    Random random = new Random(20170201L);
+    for(int i = 0; i < pieceKeys.length; i++) {
+      for(int j = 0; j < pieceKeys[i].length; j++) {
+        pieceKeys[i][j] = random.nextLong();
+      }
+    }
+    for(int i = 0; i < movesKeys.length; i++) {
+      movesKeys[i] = random.nextLong();
+    }
+    whiteKey = random.nextLong();
+    blackKey = random.nextLong();
+    for(int i = 0; i < sizeKeys.length; i++) {
+      sizeKeys[i] = random.nextLong();
+    }
+    // the 8x8 board keeps key 0, so keys written before other sizes were allowed still hold
+    sizeKeys[8] = 0;
+  }
+
+  // Method to return the key of a single chesspiece on a single square
+  // Input: character type of the chesspiece, its row and col
+  // Output: returns the key
+  public static long squareKey(char pieceType, int row, int col) {
+    return pieceKeys[pieceTypes.indexOf(pieceType)][row*(MAX_BOARD_SIZE+1) + col];
+  }
+
+  // Method to hash the chesspieces of a list
+  // Input: list to hash
+  // Output: returns the XOR of the keys of all the chesspieces
+  public static long hash(Node list) {
+    long key = 0;
+    Node piece = list.getNext();
+    while(piece != null) {
+      key ^= squareKey(Utilities.returnChessPieceType(piece), piece.getRow(), piece.getCol());
+      piece = piece.getNext();
+    }
+    return key;
+  }
+
+  // Input: number of moves left in the search
+  // Output: returns the key for it
+  public static long movesKey(int moves) {
+    return movesKeys[moves & (movesKeys.length-1)];
+  }
+
+  // Input: rows and cols of the board
+  // Output: returns the key for it
+  public static long sizeKey(int board_size) {
+    return sizeKeys[board_size];
+  }
+
+  // Input: color of the side that has to checkmate
+  // Output: returns the key for it
+  public static long sideKey(boolean color) {
+    if(color == true) {
+      return whiteKey;
+    }
+    return blackKey;
+  }
+}
+
+// End
@@ -0,0 +1,113 @@
+// Filename: BenchmarkRunner.java
+//
+// Contains class BenchmarkRunner that times an operation the way the benchmarks of this directory need
+//
+// An operation is run for a warmup period first, so the JIT has compiled it, and then for the
+// measured period. The time of every sample (batch calls of the operation) is recorded, which gives
+// the throughput and the latency percentiles, and the bytes allocated by the benchmark thread and
+// the garbage collections during the measured period give the allocation rate. The result of every
+// call goes into a sink, so the JIT cannot drop the work as unused.
+//
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.IntSupplier;
+
+class BenchmarkRunner {
+
+  public static volatile int sink; // results of the operations end up here
+
+  private static com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  // Method to print the header of the table run prints lines of
+  // Input: none
+  // Output: void
+  public static void printHeader() {
+    System.out.println(String.format(Locale.ROOT, "%-36s %12s %10s %10s %10s %10s %12s %10s %5s",
+                                     "benchmark", "ops/s", "p50", "p90", "p99", "max", "alloc B/op", "alloc MB/s", "gcs"));
+  }
+
+  // Method to benchmark an operation and print one line for it
+  // Input: name of the benchmark, the operation, calls per sample, warmup and measured seconds
+  // Output: void
+  public static void run(String name, IntSupplier op, int batch, double warmupSeconds, double seconds) {
+    // warmup
+    long end = System.nanoTime() + (long) (warmupSeconds*1e9);
+    int result = 0;
+    while(System.nanoTime() < end) {
+      for(int i = 0; i < batch; i++) {
+        result += op.getAsInt();
+      }
+    }
+
+    long[] samples = new long[1024];
+    int count = 0;
+    long threadId = Thread.currentThread().getId();
+    long gcsBefore = gcCount();
+    long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+    long start = System.nanoTime();
+    end = start + (long) (seconds*1e9);
+    long now = start;
+    do {
+      long sampleStart = now;
+      for(int i = 0; i < batch; i++) {
+        result += op.getAsInt();
+      }
+      now = System.nanoTime();
+      if(count == samples.length) {
+        samples = Arrays.copyOf(samples, 2*count);
+      }
+      samples[count++] = now - sampleStart;
+    } while(now < end);
+    long elapsed = now - start;
+    long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+    long gcs = gcCount() - gcsBefore;
+    sink = result;
+
+    Arrays.sort(samples, 0, count);
+    long ops = (long) count * batch;
+    System.out.println(String.format(Locale.ROOT, "%-36s %12.1f %10s %10s %10s %10s %12d %10.1f %5d",
+                                     name, ops / (elapsed/1e9),
+                                     time(percentile(samples, count, 0.50) / batch),
+                                     time(percentile(samples, count, 0.90) / batch),
+                                     time(percentile(samples, count, 0.99) / batch),
+                                     time(samples[count-1] / batch),
+                                     allocated / ops, allocated / (elapsed/1e9) / (1 << 20), gcs));
+  }
+
+  // Input: sorted samples, their count and a fraction
+  // Output: returns the sample below which that fraction of the samples lie
+  private static double percentile(long[] samples, int count, double fraction) {
+    return samples[Math.min(count-1, (int) (fraction*count))];
+  }
+
+  // Input: nanoseconds
+  // Output: returns them formatted in a fitting unit
+  private static String time(double nanos) {
+    if(nanos < 1e3) {
+      return String.format(Locale.ROOT, "%.0f ns", nanos);
+    }
+    else if(nanos < 1e6) {
+      return String.format(Locale.ROOT, "%.1f us", nanos/1e3);
+    }
+    else if(nanos < 1e9) {
+      return String.format(Locale.ROOT, "%.1f ms", nanos/1e6);
+    }
+    return String.format(Locale.ROOT, "%.2f s", nanos/1e9);
+  }
+
+  // Input: none
+  // Output: returns the number of garbage collections so far
+  private static long gcCount() {
+    long count = 0;
+    for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, gc.getCollectionCount());
+    }
+    return count;
+  }
+}
+
+// End
@@ -0,0 +1,182 @@
+// Filename: MoveGenBenchmark.java
+//
+// Contains class MoveGenBenchmark that measures the primitives the search is built from
+//
+//     getMoves <type>  ChessPiece.getMoves of each chesspiece type, towards an occupied square
+//     isAttacking      ChessPiece.isAttacking between two chesspieces of a board
+//     findChessPiece   ListOperations.findChessPiece of a square, occupied or not
+//     listCopy         ListOperations.listCopy of a board
+//     checkBlock       ChessPuzzle.checkBlock of the squares between two chesspieces on a line
+//
+// Each is run on random boards (fixed seed) of every density, which is the number of chesspieces
+// on the board including both kings. getMoves and isAttacking only look at two squares, so for them
+// the density only changes which squares are picked; the list operations get slower with it.
+// All inputs are made before the timing starts, and a sample is BATCH calls.
+//
+// Usage: make microbench [BENCH_ARGS="--time 1 --density 8,32"]
+//        java -cp .:bench/classes MoveGenBenchmark [--warmup <s>] [--time <s>] [--density <n,n,...>]
+//
+// This needs to be compiled with BenchmarkRunner.java and the classes of ChessPuzzle.
+//
+
+import java.util.ArrayList;
+import java.util.Random;
+
+class MoveGenBenchmark {
+
+  private static final int BOARDS = 64; // random boards of each density
+  private static final int INPUTS = 4096; // inputs prepared for each benchmark, used in turn
+  private static final int BATCH = 1000; // calls per sample
+  private static final String TYPES = "kqrbnp";
+
+  // Method to make a random board
+  // Input: random numbers and the number of chesspieces
+  // Output: returns the list
+  private static Node randomBoard(Random random, int density) {
+    Node head = new Node();
+    boolean[] used = new boolean[64];
+    for(int i = 0; i < density; i++) {
+      char type = (i < 2) ? "kK".charAt(i) : "qrbnpQRBNP".charAt(random.nextInt(10));
+      int square;
+      do {
+        square = random.nextInt(64);
+      } while(used[square] || ((type == 'p' || type == 'P') && (square < 8 || square >= 56)));
+      used[square] = true;
+      head = ListOperations.insert(head, new Node(type, square/8 + 1, square%8 + 1));
+    }
+    return head;
+  }
+
+  // Input: list and random numbers
+  // Output: returns a random chesspiece of the list
+  private static Node randomPiece(Node head, Random random) {
+    ArrayList<Node> pieces = new ArrayList<Node>();
+    for(Node piece = head.getNext(); piece != null; piece = piece.getNext()) {
+      pieces.add(piece);
+    }
+    return pieces.get(random.nextInt(pieces.size()));
+  }
+
+  // Method to run every benchmark on boards of one density
+  // Input: density, warmup and measured seconds
+  // Output: void
+  private static void runDensity(int density, double warmup, double time) {
+    Random random = new Random(20170201L + density);
+    Node[] boards = new Node[BOARDS];
+    for(int i = 0; i < BOARDS; i++) {
+      boards[i] = randomBoard(random, density);
+    }
+    int[] next = {0};
+
+    // getMoves of a chesspiece of each type on a random square towards an occupied square
+    for(int t = 0; t < TYPES.length(); t++) {
+      ChessPiece[] pieces = new ChessPiece[INPUTS];
+      int[] dest = new int[2*INPUTS];
+      for(int i = 0; i < INPUTS; i++) {
+        Node target = randomPiece(boards[i % BOARDS], random);
+        pieces[i] = new Node(TYPES.charAt(t), random.nextInt(6) + 2, random.nextInt(8) + 1).getChessPiece();
+        dest[2*i] = target.getRow();
+        dest[2*i+1] = target.getCol();
+      }
+      BenchmarkRunner.run("getMoves " + pieces[0].getClass().getName() + " d=" + density, () -> {
+        int i = next[0]++ & (INPUTS-1);
+        ChessPiece piece = pieces[i];
+        int[] moves = piece.getMoves(piece.getRow(), piece.getCol(), dest[2*i], dest[2*i+1], false);
+        return moves == null ? -1 : moves.length;
+      }, BATCH, warmup, time);
+    }
+
+    // isAttacking between two chesspieces of a board
+    ChessPiece[] attackers = new ChessPiece[INPUTS];
+    ChessPiece[] targets = new ChessPiece[INPUTS];
+    for(int i = 0; i < INPUTS; i++) {
+      attackers[i] = randomPiece(boards[i % BOARDS], random).getChessPiece();
+      targets[i] = randomPiece(boards[i % BOARDS], random).getChessPiece();
+    }
+    BenchmarkRunner.run("isAttacking d=" + density, () -> {
+      int i = next[0]++ & (INPUTS-1);
+      return attackers[i].isAttacking(targets[i]) ? 1 : 0;
+    }, BATCH, warmup, time);
+
+    // findChessPiece of a random square
+    int[] squares = new int[INPUTS];
+    for(int i = 0; i < INPUTS; i++) {
+      squares[i] = random.nextInt(64);
+    }
+    BenchmarkRunner.run("findChessPiece d=" + density, () -> {
+      int i = next[0]++ & (INPUTS-1);
+      Node found = ListOperations.findChessPiece(boards[i % BOARDS], squares[i]/8 + 1, squares[i]%8 + 1);
+      return found == null ? 0 : 1;
+    }, BATCH, warmup, time);
+
+    // listCopy of a board
+    BenchmarkRunner.run("listCopy d=" + density, () -> {
+      return ListOperations.listCopy(boards[next[0]++ & (BOARDS-1)]).hashCode();
+    }, BATCH, warmup, time);
+
+    // checkBlock between two chesspieces that are on one line
+    ChessPuzzle puzzle = new ChessPuzzle(1, 1, 8);
+    Node[] blockBoards = new Node[INPUTS];
+    int[][] between = new int[INPUTS][];
+    int[] ends = new int[4*INPUTS];
+    int found = 0;
+    for(int attempt = 0; found < INPUTS && attempt < 1000*INPUTS; attempt++) {
+      Node board = boards[attempt % BOARDS];
+      Node from = randomPiece(board, random);
+      Node to = randomPiece(board, random);
+      if(from == to) {
+        continue;
+      }
+      int[] moves = from.getChessPiece().getMoves(from.getRow(), from.getCol(), to.getRow(), to.getCol(), true);
+      if(moves == null || moves.length == 0) {
+        continue;
+      }
+      blockBoards[found] = board;
+      between[found] = moves;
+      ends[4*found] = from.getRow();
+      ends[4*found+1] = from.getCol();
+      ends[4*found+2] = to.getRow();
+      ends[4*found+3] = to.getCol();
+      found++;
+    }
+    if(found < INPUTS) {
+      System.out.println("checkBlock d=" + density + ": no two chesspieces on a line with a square between them");
+      return;
+    }
+    BenchmarkRunner.run("checkBlock d=" + density, () -> {
+      int i = next[0]++ & (INPUTS-1);
+      return puzzle.checkBlock(blockBoards[i], between[i], ends[4*i], ends[4*i+1], ends[4*i+2], ends[4*i+3], false) ? 1 : 0;
+    }, BATCH, warmup, time);
+  }
+
+  // main method
+  public static void main(String[] args) {
+    double warmup = 1;
+    double time = 2;
+    String densities = "4,8,16,32";
+    for(int i = 0; i < args.length; i++) {
+      if(args[i].equals("--warmup") && i+1 < args.length) {
+        warmup = Double.parseDouble(args[++i]);
+      }
+      else if(args[i].equals("--time") && i+1 < args.length) {
+        time = Double.parseDouble(args[++i]);
+      }
+      else if(args[i].equals("--density") && i+1 < args.length) {
+        densities = args[++i];
+      }
+      else {
+        Utilities.errExit("Unknown option: " + args[i]);
+      }
+    }
+    BenchmarkRunner.printHeader();
+    for(String density : densities.split(",")) {
+      int pieces = Integer.parseInt(density.trim());
+      if(pieces < 2 || pieces > 48) {
+        Utilities.errExit("Density must be between 2 and 48 chesspieces");
+      }
+      runDensity(pieces, warmup, time);
+    }
+  }
+}
+
+// End
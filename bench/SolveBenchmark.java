@@ -0,0 +1,99 @@
+// Filename: SolveBenchmark.java
+//
+// Contains class SolveBenchmark that measures how fast whole puzzles are solved, per depth class
+//
+// The corpus in bench/corpus has one file per class, in the input.txt format: mate1.txt holds
+// mate in 1 puzzles (1 move), mate2.txt mate in 2 (3 moves), mate3.txt mate in 3 (5 moves) and
+// mate4.txt mate in 4 (7 moves). Every puzzle is checked once to still be solved before the
+// timing starts, so a change that breaks the search shows up here as well. Each call of the
+// benchmark solves the next puzzle of the class, from parsing to the answer, on the calling thread.
+//
+// Usage: make bench [BENCH_ARGS="--time 2 mate1"]
+//        java -cp .:bench/classes SolveBenchmark [--warmup <s>] [--time <s>] [--tt <MB>] [mate1 mate2 ...]
+// With --tt the transposition table stays filled between calls, which measures a warm table.
+//
+// This needs to be compiled with BenchmarkRunner.java and the classes of ChessPuzzle.
+//
+
+import java.io.*;
+import java.util.ArrayList;
+
+class SolveBenchmark {
+
+  private static final String CORPUS = "bench/corpus/";
+  private static final String[] CLASSES = {"mate1", "mate2", "mate3", "mate4"};
+
+  // Method to read the puzzles of a depth class
+  // Input: name of the class
+  // Output: returns the puzzles
+  private static ArrayList<Puzzle> load(String depthClass) throws IOException {
+    ArrayList<Puzzle> puzzles = new ArrayList<Puzzle>();
+    PuzzleReader reader = new PuzzleReader(CORPUS + depthClass + ".txt", 1);
+    ArrayList<Puzzle> batch;
+    while(!(batch = reader.readBatch()).isEmpty()) {
+      puzzles.addAll(batch);
+    }
+    reader.close();
+    return puzzles;
+  }
+
+  // Method to solve a puzzle the way the solve stage of the pipeline does
+  // Input: puzzle
+  // Output: returns the answer
+  public static String solve(Puzzle puzzle) {
+    ChessPuzzle c = new ChessPuzzle(puzzle.getBoardNo(), puzzle.getMoves(), 8);
+    c.setHead(puzzle.toList(c.getHead()));
+    c.validate();
+    c.solvePuzzle();
+    return c.getOutput();
+  }
+
+  // main method
+  public static void main(String[] args) throws IOException {
+    double warmup = 5;
+    double time = 10;
+    ArrayList<String> classes = new ArrayList<String>();
+    for(int i = 0; i < args.length; i++) {
+      if(args[i].equals("--warmup") && i+1 < args.length) {
+        warmup = Double.parseDouble(args[++i]);
+      }
+      else if(args[i].equals("--time") && i+1 < args.length) {
+        time = Double.parseDouble(args[++i]);
+      }
+      else if(args[i].equals("--tt") && i+1 < args.length) {
+        ChessPuzzle.table = new TranspositionTable(Integer.parseInt(args[++i]), false);
+      }
+      else {
+        classes.add(args[i]);
+      }
+    }
+    if(classes.isEmpty()) {
+      for(String depthClass : CLASSES) {
+        classes.add(depthClass);
+      }
+    }
+    ChessPuzzle.renderer = new Renderer(); // nothing is printed, so no board copies are made
+
+    BenchmarkRunner.printHeader();
+    for(String depthClass : classes) {
+      ArrayList<Puzzle> puzzles = load(depthClass);
+      if(puzzles.isEmpty()) {
+        Utilities.errExit("No puzzles in " + CORPUS + depthClass + ".txt");
+      }
+      for(Puzzle puzzle : puzzles) {
+        String answer = solve(puzzle);
+        if(answer.startsWith("No solution") || answer.startsWith("Unknown")) {
+          Utilities.errExit(depthClass + " board " + puzzle.getBoardNo() + " is no longer solved: " + answer);
+        }
+      }
+      int[] next = {0};
+      BenchmarkRunner.run("solve " + depthClass + " (" + puzzles.size() + " boards)", () -> {
+        Puzzle puzzle = puzzles.get(next[0]);
+        next[0] = (next[0] + 1) % puzzles.size();
+        return solve(puzzle).hashCode();
+      }, 1, warmup, time);
+    }
+  }
+}
+
+// End